@@ -0,0 +1,174 @@
+package engine;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A single file holding every asset, written by AssetPacker. Textures are stored already decoded and converted into
+ * the same pixel layout as the render target, and sounds are stored as raw PCM samples, so loading them only copies
+ * memory instead of decoding files. The archive is memory-mapped, so the operating system only reads the parts of it
+ * that are actually loaded.
+ *
+ * The archive starts with a header (magic number, version, entry count and index offset), followed by the data of
+ * each entry, followed by the index, which holds each entry's path, type, location and format.
+ */
+final class AssetArchive {
+
+    static final int MAGIC = 0x4D474641;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 20;
+
+    // The types of entry:
+    static final int IMAGE = 0;
+    static final int SOUND = 1;
+    static final int FILE = 2;
+
+    // The flags of an entry:
+    static final int COMPRESSED = 1;
+    static final int OPAQUE = 2;
+
+    private static final class Entry {
+        int type;
+        int flags;
+        long offset;
+        int storedLength;
+        int length;
+        int width, height;
+        AudioFormat format;
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private final HashMap<String, Entry> entries = new HashMap<String, Entry>();
+
+    private AssetArchive(File file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens an archive and reads its index.
+     * @param file The archive file.
+     * @return The archive.
+     */
+    static AssetArchive open(File file) {
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            AssetArchive archive = new AssetArchive(file, channel);
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new Error("Not a supported asset archive: " + file);
+            }
+            int count = header.getInt();
+            long indexOffset = header.getLong();
+
+            // The index is only read once, so it's copied out of the archive to read it as a stream:
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, channel.size() - indexOffset);
+            byte[] bytes = new byte[index.remaining()];
+            index.get(bytes);
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+            for (int i = 0; i < count; i++) {
+                String path = input.readUTF();
+                Entry entry = new Entry();
+                entry.type = input.readByte();
+                entry.flags = input.readByte();
+                entry.offset = input.readLong();
+                entry.storedLength = input.readInt();
+                entry.length = input.readInt();
+                if (entry.type == IMAGE) {
+                    entry.width = input.readInt();
+                    entry.height = input.readInt();
+                } else if (entry.type == SOUND) {
+                    entry.format = new AudioFormat(new AudioFormat.Encoding(input.readUTF()), input.readFloat(), input.readInt(), input.readInt(), input.readInt(), input.readFloat(), input.readBoolean());
+                }
+                archive.entries.put(path, entry);
+            }
+            return archive;
+        } catch (IOException e) {
+            throw new Error("Failed to open asset archive: " + file, e);
+        }
+    }
+
+    /**
+     * @param path The path of an asset, relative to the "assets" directory.
+     * @return Whether or not the archive holds the asset.
+     */
+    boolean contains(String path) {
+        return entries.containsKey(normalize(path));
+    }
+
+    /**
+     * @return The path with forward slashes, as stored in the archive.
+     */
+    static String normalize(String path) {
+        return path.replace('\\', '/');
+    }
+
+    private Entry getEntry(String path, int type) {
+        Entry entry = entries.get(normalize(path));
+        if (entry == null || entry.type != type) {
+            throw new Error("Asset archive " + file + " doesn't hold " + path + " as the right type of asset.");
+        }
+        return entry;
+    }
+
+    /**
+     * @return The entry's data, uncompressed.
+     */
+    private ByteBuffer read(Entry entry) {
+        try {
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, entry.offset, entry.storedLength);
+            if ((entry.flags & COMPRESSED) != 0) {
+                // Decompressing from an array is much faster than reading the mapped data a byte at a time:
+                byte[] compressed = new byte[entry.storedLength];
+                data.get(compressed);
+                byte[] uncompressed = new byte[entry.length];
+                Lz4Codec.decompress(compressed, uncompressed);
+                data = ByteBuffer.wrap(uncompressed);
+            }
+            return data;
+        } catch (IOException e) {
+            throw new Error("Failed to read asset archive: " + file, e);
+        }
+    }
+
+    /**
+     * @param path The path of an image, relative to the "assets" directory.
+     * @return The image, in the same layout as Engine.convertImage() produces.
+     */
+    BufferedImage readImage(String path) {
+        Entry entry = getEntry(path, IMAGE);
+        BufferedImage image = new BufferedImage(entry.width, entry.height, ((entry.flags & OPAQUE) != 0) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+        read(entry).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(pixels);
+        return image;
+    }
+
+    /**
+     * @param path The path of a sound, relative to the "assets" directory.
+     * @return The sound, which plays its samples straight from the archive.
+     */
+    Sound readSound(String path) {
+        Entry entry = getEntry(path, SOUND);
+        return new Sound(entry.format, read(entry));
+    }
+
+    /**
+     * @param path The path of any other file, relative to the "assets" directory.
+     * @return A stream of the file's contents.
+     */
+    InputStream readFile(String path) {
+        ByteBuffer data = read(getEntry(path, FILE));
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return new ByteArrayInputStream(bytes);
+    }
+
+}
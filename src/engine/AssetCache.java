@@ -0,0 +1,187 @@
+package engine;
+
+import java.awt.Image;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Keeps one copy of each loaded asset, keyed by its type, path and load parameters, and counts how many times it has
+ * been loaded without being released. Assets that are no longer referenced stay loaded (so that loading them again
+ * is free) until the total size of every loaded asset exceeds a budget, at which point the least recently released
+ * are dropped. Loading a dropped asset again simply reads it from disk again.
+ */
+final class AssetCache {
+
+    private static final class Entry {
+        final String key;
+        final String type;
+        final String path;
+        final String name;
+        Object asset;
+        long bytes;
+        int references;
+
+        Entry(String key, String type, String path, String name) {
+            this.key = key;
+            this.type = type;
+            this.path = path;
+            this.name = name;
+        }
+    }
+
+    private long maxBytes = 256L << 20;
+    private long bytes;
+
+    private final HashMap<String, Entry> entries = new HashMap<String, Entry>();
+    private final IdentityHashMap<Object, Entry> entriesByAsset = new IdentityHashMap<Object, Entry>();
+
+    // The entries that aren't referenced, with the least recently released first:
+    private final LinkedHashMap<String, Entry> unreferenced = new LinkedHashMap<String, Entry>();
+
+    /**
+     * @param maxBytes The total size of the loaded assets above which unreferenced assets are dropped. If zero, assets
+     *                 are dropped as soon as they are released.
+     */
+    synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        trim();
+    }
+
+    /**
+     * Loads an asset, or returns the copy that is already loaded, and adds a reference to it. This can be called from
+     * any thread, and an asset that is being loaded on one thread is waited for rather than loaded again on another.
+     * @param type The kind of asset, e.g. "Texture".
+     * @param path The path of the asset, relative to the "assets" directory.
+     * @param parameters Any parameters the asset is loaded with (e.g. a font's size), or an empty string.
+     * @param loader The function that loads the asset if it isn't already loaded.
+     * @return The asset.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T acquire(String type, String path, String parameters, Supplier<T> loader) {
+        String name = parameters.isEmpty() ? path : path + " " + parameters;
+        String key = type + ":" + name;
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key, type, path, name);
+                entries.put(key, entry);
+            }
+            entry.references++;
+            unreferenced.remove(key);
+        }
+
+        // Load the asset while holding only its own entry's lock, so that other assets can load in parallel:
+        synchronized (entry) {
+            if (entry.asset == null) {
+                T asset;
+                try {
+                    asset = loader.get();
+                } catch (RuntimeException | Error e) {
+                    release(entry);
+                    throw e;
+                }
+                long size = getSize(asset);
+                synchronized (this) {
+                    entry.asset = asset;
+                    entry.bytes = size;
+                    entriesByAsset.put(asset, entry);
+                    bytes += size;
+                    trim();
+                }
+            }
+            return (T)entry.asset;
+        }
+    }
+
+    /**
+     * Removes a reference to an asset that was loaded with acquire().
+     * @param asset The asset.
+     */
+    synchronized void release(Object asset) {
+        Entry entry = entriesByAsset.get(asset);
+        if (entry == null || entry.references == 0) {
+            throw new Error("Asset was released more times than it was loaded, or wasn't loaded by the engine.");
+        }
+        release(entry);
+    }
+
+    private synchronized void release(Entry entry) {
+        if (--entry.references > 0) {
+            return;
+        }
+        if (entry.asset == null) {
+            // The asset failed to load, so there's nothing to keep:
+            entries.remove(entry.key);
+        } else {
+            unreferenced.put(entry.key, entry);
+            trim();
+        }
+    }
+
+    /**
+     * @return The total size (in bytes) of every loaded asset.
+     */
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return The memory used by each loaded asset, largest first.
+     */
+    synchronized ArrayList<AssetInfo> getInfo() {
+        ArrayList<AssetInfo> info = new ArrayList<AssetInfo>();
+        for (Entry entry : entries.values()) {
+            if (entry.asset != null) {
+                info.add(new AssetInfo(entry.type, entry.name, entry.bytes, entry.references));
+            }
+        }
+        info.sort((a, b) -> Long.compare(b.bytes, a.bytes));
+        return info;
+    }
+
+    /**
+     * @param path The path of a file, relative to the "assets" directory.
+     * @return Every loaded asset that was loaded from the file, e.g. a font loaded at several sizes.
+     */
+    synchronized ArrayList<Object> getAssets(Path path) {
+        ArrayList<Object> assets = new ArrayList<Object>();
+        for (Entry entry : entries.values()) {
+            if (entry.asset != null && Paths.get(entry.path).normalize().equals(path)) {
+                assets.add(entry.asset);
+            }
+        }
+        return assets;
+    }
+
+    private void trim() {
+        Iterator<Entry> iterator = unreferenced.values().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            entries.remove(entry.key);
+            entriesByAsset.remove(entry.asset);
+            bytes -= entry.bytes;
+        }
+    }
+
+    /**
+     * @return The number of bytes of decoded pixel data that an asset holds.
+     */
+    private static long getSize(Object asset) {
+        Image image = null;
+        if (asset instanceof Texture) {
+            image = ((Texture)asset).image;
+        } else if (asset instanceof ResizableTexture) {
+            image = ((ResizableTexture)asset).image;
+        }
+        return (image != null) ? 4L * image.getWidth(null) * image.getHeight(null) : 0;
+    }
+
+}
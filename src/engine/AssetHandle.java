@@ -0,0 +1,65 @@
+package engine;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * An asset that is being loaded in the background, from one of the Engine.load...Async() functions.
+ * @param <T> The type of asset, e.g. Texture.
+ */
+public class AssetHandle<T> {
+
+    private final String path;
+    private final Future<T> future;
+
+    AssetHandle(String path, Future<T> future) {
+        this.path = path;
+        this.future = future;
+    }
+
+    /**
+     * @return The path of the asset, relative to the "assets" directory.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return Whether or not the asset has finished loading (or failed to load), in which case get() won't wait.
+     */
+    public boolean isLoaded() {
+        return future.isDone();
+    }
+
+    /**
+     * Waits for the asset to finish loading if it hasn't yet.
+     * @return The asset.
+     */
+    public T get() {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            // Rethrow the loader's own error, so that it reads the same as when loading synchronously:
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new Error("Failed to load asset: " + path, cause);
+        } catch (CancellationException e) {
+            throw new Error("Failed to load asset: " + path + " was cancelled.", e);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
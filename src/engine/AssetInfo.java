@@ -0,0 +1,41 @@
+package engine;
+
+/**
+ * The memory used by a loaded asset, from Engine.getLoadedAssets().
+ */
+public class AssetInfo {
+
+    /**
+     * The kind of asset, e.g. "Texture" or "Sound".
+     */
+    public final String type;
+
+    /**
+     * The path of the asset, relative to the "assets" directory, followed by any parameters it was loaded with (e.g.
+     * a font's size).
+     */
+    public final String name;
+
+    /**
+     * The number of bytes of decoded pixel data that the asset holds, which is zero for fonts and sounds.
+     */
+    public final long bytes;
+
+    /**
+     * The number of times the asset has been loaded without being released. Assets with no references are kept in
+     * case they are loaded again, until the cache needs the memory (see Engine.setAssetCacheSize()).
+     */
+    public final int references;
+
+    AssetInfo(String type, String name, long bytes, int references) {
+        this.type = type;
+        this.name = name;
+        this.bytes = bytes;
+        this.references = references;
+    }
+
+    public String toString() {
+        return type + " " + name + ": " + bytes + " bytes, " + references + " references";
+    }
+
+}
@@ -0,0 +1,72 @@
+package engine;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads assets on a pool of background threads, one per CPU core, so that decoding many images doesn't hold up the
+ * game's thread and uses every core. The pool's threads are daemon threads, so they never keep the game running, and
+ * are only started once something is loaded asynchronously.
+ */
+final class AssetLoader {
+
+    private ExecutorService pool;
+
+    // The number of loads started and finished since the last time every load had finished:
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger finished = new AtomicInteger();
+
+    /**
+     * Starts loading an asset in the background.
+     * @param path The path of the asset, for error messages.
+     * @param loader The function that loads the asset, which must be safe to call from any thread.
+     * @return A handle to the asset.
+     */
+    synchronized <T> AssetHandle<T> load(String path, Callable<T> loader) {
+        if (pool == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "Asset Loader " + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        // Start counting progress again from zero for a new batch of loads:
+        if (finished.get() == started.get()) {
+            finished.set(0);
+            started.set(0);
+        }
+        started.incrementAndGet();
+
+        // Count the load as finished before its result is published, so that the progress is already 1 once every
+        // handle has been retrieved:
+        Future<T> future = pool.submit(() -> {
+            try {
+                return loader.call();
+            } finally {
+                finished.incrementAndGet();
+            }
+        });
+        return new AssetHandle<T>(path, future);
+    }
+
+    /**
+     * @return The fraction of the current batch of loads that has finished, which is 1 when nothing is loading.
+     */
+    synchronized float getProgress() {
+        int total = started.get();
+        return (total == 0) ? 1 : Math.min(1, (float)finished.get() / total);
+    }
+
+    /**
+     * @return The number of loads that haven't finished yet.
+     */
+    synchronized int getPendingCount() {
+        return Math.max(0, started.get() - finished.get());
+    }
+
+}
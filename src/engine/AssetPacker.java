@@ -0,0 +1,184 @@
+package engine;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import javax.imageio.ImageIO;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Packs a directory of assets into a single asset archive, as a build step. When a file named "assets.pak" is next
+ * to the "assets" directory, the engine loads any asset that it holds from it instead of from the "assets" directory,
+ * which is much faster because nothing needs to be decoded.
+ *
+ * Usage: java engine.AssetPacker [-compress] [assets directory] [archive file]
+ * The directory defaults to "assets" and the archive defaults to "assets.pak". With -compress, textures are
+ * compressed, which makes the archive smaller at the cost of a little time to decompress them.
+ */
+public class AssetPacker {
+
+    public static void main(String[] args) {
+        boolean compress = false;
+        ArrayList<String> paths = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.equals("-compress")) {
+                compress = true;
+            } else {
+                paths.add(arg);
+            }
+        }
+        if (paths.size() > 2) {
+            System.err.println("Usage: java engine.AssetPacker [-compress] [assets directory] [archive file]");
+            System.exit(1);
+        }
+        File directory = new File((paths.size() > 0) ? paths.get(0) : "assets");
+        File archive = new File((paths.size() > 1) ? paths.get(1) : "assets.pak");
+
+        long start = System.nanoTime();
+        int count = pack(directory, archive, compress);
+        System.out.printf("Packed %d assets into %s (%d bytes) in %.0f ms%n", count, archive, archive.length(), (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Packs every file in a directory (and the directories inside it) into an archive. Hidden files and directories,
+     * such as the texture atlas cache, are skipped.
+     * @param directory The directory of assets.
+     * @param archive The archive file to write.
+     * @param compress Whether or not to compress textures.
+     * @return The number of assets packed.
+     */
+    public static int pack(File directory, File archive, boolean compress) {
+        ArrayList<String> paths = new ArrayList<String>();
+        findFiles(directory, "", paths);
+
+        try (RandomAccessFile output = new RandomAccessFile(archive, "rw")) {
+            output.setLength(0);
+            output.seek(AssetArchive.HEADER_SIZE);
+
+            ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+            DataOutputStream index = new DataOutputStream(indexBytes);
+            for (String path : paths) {
+                File file = new File(directory, path);
+                String extension = path.substring(path.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+                byte[] data;
+                int flags = 0;
+                ByteArrayOutputStream formatBytes = new ByteArrayOutputStream();
+                DataOutputStream format = new DataOutputStream(formatBytes);
+                int type;
+
+                if (extension.equals("png") || extension.equals("gif") || extension.equals("jpg") || extension.equals("jpeg")) {
+                    // Store the pixels exactly as the engine would convert them after decoding the file:
+                    type = AssetArchive.IMAGE;
+                    BufferedImage image = ImageIO.read(file);
+                    if (image == null) {
+                        throw new Error("Failed to load texture: " + path + " is not in a supported format.");
+                    }
+                    image = Engine.convertImage(image);
+                    int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+                    ByteBuffer buffer = ByteBuffer.allocate(pixels.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+                    buffer.asIntBuffer().put(pixels);
+                    data = buffer.array();
+                    if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+                        flags |= AssetArchive.OPAQUE;
+                    }
+                    format.writeInt(image.getWidth());
+                    format.writeInt(image.getHeight());
+                } else if (extension.equals("wav") || extension.equals("aiff") || extension.equals("au")) {
+                    // Store the samples, converting anything that isn't already PCM:
+                    type = AssetArchive.SOUND;
+                    try (AudioInputStream stream = openPcm(file)) {
+                        AudioFormat audioFormat = stream.getFormat();
+                        data = stream.readAllBytes();
+                        format.writeUTF(audioFormat.getEncoding().toString());
+                        format.writeFloat(audioFormat.getSampleRate());
+                        format.writeInt(audioFormat.getSampleSizeInBits());
+                        format.writeInt(audioFormat.getChannels());
+                        format.writeInt(audioFormat.getFrameSize());
+                        format.writeFloat(audioFormat.getFrameRate());
+                        format.writeBoolean(audioFormat.isBigEndian());
+                    }
+                } else {
+                    type = AssetArchive.FILE;
+                    data = Files.readAllBytes(file.toPath());
+                }
+
+                // Only keep compressed textures that are meaningfully smaller:
+                int length = data.length;
+                if (compress && type == AssetArchive.IMAGE) {
+                    byte[] compressed = Lz4Codec.compress(data);
+                    if (compressed.length < data.length - data.length / 8) {
+                        data = compressed;
+                        flags |= AssetArchive.COMPRESSED;
+                    }
+                }
+
+                index.writeUTF(path);
+                index.writeByte(type);
+                index.writeByte(flags);
+                index.writeLong(output.getFilePointer());
+                index.writeInt(data.length);
+                index.writeInt(length);
+                format.flush();
+                formatBytes.writeTo(index);
+                output.write(data);
+            }
+
+            index.flush();
+            long indexOffset = output.getFilePointer();
+            output.write(indexBytes.toByteArray());
+            output.seek(0);
+            output.writeInt(AssetArchive.MAGIC);
+            output.writeInt(AssetArchive.VERSION);
+            output.writeInt(paths.size());
+            output.writeLong(indexOffset);
+        } catch (IOException e) {
+            throw new Error("Failed to write asset archive: " + archive, e);
+        } catch (UnsupportedAudioFileException e) {
+            throw new Error("Failed to load sound.", e);
+        }
+        return paths.size();
+    }
+
+    /**
+     * @return A stream of a sound file's samples, converted to PCM if they aren't already.
+     */
+    static AudioInputStream openPcm(File file) throws IOException, UnsupportedAudioFileException {
+        AudioInputStream stream = AudioSystem.getAudioInputStream(file);
+        AudioFormat.Encoding encoding = stream.getFormat().getEncoding();
+        if (encoding.equals(AudioFormat.Encoding.PCM_SIGNED) || encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED)) {
+            return stream;
+        }
+        return AudioSystem.getAudioInputStream(AudioFormat.Encoding.PCM_SIGNED, stream);
+    }
+
+    /**
+     * Adds the paths (relative to the assets directory, with forward slashes) of every file in a directory.
+     */
+    private static void findFiles(File directory, String prefix, ArrayList<String> paths) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new Error("Not a directory: " + directory);
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.getName().startsWith(".")) {
+                continue;
+            }
+            if (file.isDirectory()) {
+                findFiles(file, prefix + file.getName() + "/", paths);
+            } else {
+                paths.add(prefix + file.getName());
+            }
+        }
+    }
+
+}
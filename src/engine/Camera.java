@@ -0,0 +1,73 @@
+package engine;
+
+/**
+ * A view of the game world. While a camera is set with Engine.setCamera(), everything is drawn in world coordinates
+ * and the camera decides which part of the world is shown on the screen.
+ */
+public class Camera {
+
+    private Vector2 position;
+    private float zoom = 1;
+    private float rotation;
+
+    // Set whenever the camera changes, so that the engine knows to rebuild its transform:
+    boolean dirty = true;
+
+    /**
+     * Creates a camera centered on a position in the world.
+     * @param position The position in the world that will appear at the center of the screen.
+     */
+    public Camera(Vector2 position) {
+        this.position = position;
+    }
+
+    /**
+     * @return The position in the world that appears at the center of the screen.
+     */
+    public Vector2 getPosition() {
+        return position;
+    }
+
+    /**
+     * @param position The position in the world that will appear at the center of the screen.
+     */
+    public void setPosition(Vector2 position) {
+        this.position = position;
+        dirty = true;
+    }
+
+    /**
+     * @return How much the world is magnified.
+     */
+    public float getZoom() {
+        return zoom;
+    }
+
+    /**
+     * @param zoom How much the world will be magnified. Values above 1 zoom in and values below 1 zoom out.
+     */
+    public void setZoom(float zoom) {
+        if (zoom <= 0) {
+            throw new Error("Camera zoom must be positive: " + zoom);
+        }
+        this.zoom = zoom;
+        dirty = true;
+    }
+
+    /**
+     * @return The amount the camera is rotated clockwise (in degrees).
+     */
+    public float getRotation() {
+        return rotation;
+    }
+
+    /**
+     * @param rotation The amount the camera will be rotated clockwise (in degrees). The world appears rotated the
+     *                 opposite way, around the center of the screen.
+     */
+    public void setRotation(float rotation) {
+        this.rotation = rotation;
+        dirty = true;
+    }
+
+}
@@ -0,0 +1,13 @@
+package engine;
+
+public enum CaptureFormat {
+    /**
+     * Write each captured frame to its own numbered PNG file in a directory.
+     */
+    PNG_SEQUENCE,
+
+    /**
+     * Write all of the captured frames to a single looping animated GIF file.
+     */
+    GIF,
+}
@@ -16,6 +16,7 @@ public class Color {
     public int getG() { return color.getGreen(); }
     public int getB() { return color.getBlue(); }
     public int getA() { return color.getAlpha(); }
+    public int getARGB() { return color.getRGB(); }
 
     /**
      * @param scale The scale factor to apply to the original alpha, between 0 and 1.
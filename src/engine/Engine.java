@@ -5,10 +5,12 @@ import game.Game;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.image.*;
 import java.io.*;
 import java.nio.file.Paths;
 import java.util.*;
+import javax.imageio.ImageIO;
 import javax.sound.sampled.*;
 import javax.swing.*;
 
@@ -21,13 +23,45 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
     private static Engine instance = new Engine();
     private static JFrame windowFrame;
     private static JLabel windowLabel;
-    private static BufferedImage bufferImage, windowImage;
-    private static Graphics2D bufferGraphics, windowGraphics;
+    private static Canvas windowCanvas;
+    private static BufferStrategy windowStrategy;
+    private static VolatileImage bufferVolatileImage;
+    private static BufferedImage bufferImage, screenImage, windowImage;
+    private static Graphics2D bufferGraphics, screenGraphics, windowGraphics;
+    private static PixelBuffer bufferPixels, screenPixels;
+    private static RenderTarget renderTarget;
     private static int bufferWidth, bufferHeight;
     private static Vector2 scaledBufferSize = Vector2.zero;
     private static Vector2 scaledBufferPos = Vector2.zero;
+    private static FramePacer pacer = new FramePacer(60);
+    private static FrameProfiler profiler = new FrameProfiler();
     private static float timeDelta;
+    private static SpriteBatch spriteBatch = new SpriteBatch();
+    private static ResizableTextureCache resizableTextureCache = new ResizableTextureCache();
+    private static SpriteVariantCache spriteVariantCache = new SpriteVariantCache();
+    private static TintCache tintCache = new TintCache();
+    private static long frameNumber;
+    private static AffineTransform spriteTransform = new AffineTransform();
+    private static AffineTransform bufferTransform = new AffineTransform();
+    private static Camera camera;
+    private static float viewX1, viewY1, viewX2, viewY2;
+    private static TiledRenderer tiledRenderer = new TiledRenderer();
+    private static PostProcessor postProcessor = new PostProcessor();
+    private static FrameRecorder frameRecorder = new FrameRecorder();
+    private static AssetLoader assetLoader = new AssetLoader();
+    private static AssetCache assetCache = new AssetCache();
+    private static HotReloader hotReloader = new HotReloader(assetCache);
+    private static AssetArchive assetArchive;
+    private static boolean assetArchiveChecked;
+    private static RenderCounters renderCounters = new RenderCounters();
+    private static RenderStats renderStats = new RenderStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+    private static double[] countCorners = new double[8];
+    private static boolean tiledRendering, tiledFrame;
+    private static boolean cachedTextRendering;
     private static boolean fullscreen;
+    private static boolean headless;
+    private static boolean acceleratedPresentation = true;
+    private static boolean windowDirty;
     private static Game game;
 
     // Input variables:
@@ -47,9 +81,37 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
     // Game loop
     // ======================================================================================
 
+    /**
+     * Runs the game in a window, or without one when started with --headless or when there is no display. Headless
+     * frames run as fast as possible, so running headless requires --frames=N to say how many frames to run.
+     */
     public static void main(String[] args) {
-        start();
-        run();
+        // Run without a window if asked to, or if there is no display to open one on:
+        boolean runHeadless = GraphicsEnvironment.isHeadless();
+        int frameCount = -1;
+        for (String arg : args) {
+            if (arg.equals("--headless")) {
+                runHeadless = true;
+            } else if (arg.startsWith("--frames=")) {
+                frameCount = Integer.parseInt(arg.substring("--frames=".length()));
+            }
+        }
+
+        if (runHeadless) {
+            if (frameCount < 0) {
+                throw new Error("Running without a window requires --frames=N");
+            }
+            startHeadless(1 / 60f);
+            for (int i = 0; i != frameCount; i++) {
+                step();
+            }
+
+            // Finish writing any frames that the game was capturing:
+            frameRecorder.finish();
+        } else {
+            start();
+            run();
+        }
     }
 
     private static void start() {
@@ -60,19 +122,85 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
         game = new Game();
     }
 
+    /**
+     * Starts the engine without a window, for running simulations or render tests on machines without a display.
+     * Nothing is shown on screen and sounds are not played; frames are drawn into an offscreen image (available from
+     * getBufferImage()) and only advance when step() is called. Input can be supplied with the post*() functions.
+     * Calling this again discards the current game and starts a new one.
+     * @param timeDelta The amount of time (in seconds) that each frame will advance the game by.
+     */
+    public static void startHeadless(float timeDelta) {
+        headless = true;
+        pacer = new FramePacer(0);
+        pacer.setSyntheticFrameDelta(timeDelta);
+
+        // Clear any state left over from a previous game:
+        synchronized (inputEvents) {
+            inputEvents.clear();
+        }
+        keysHeld.clear();
+        mouseButtonsHeld.clear();
+        mousePosition = Vector2.zero;
+
+        // Create the render target and map mouse positions to it one-to-one:
+        recreateBuffer();
+        scaledBufferPos = Vector2.zero;
+        scaledBufferSize = new Vector2(bufferWidth, bufferHeight);
+
+        // Instantiate the game object:
+        game = new Game();
+    }
+
+    /**
+     * Runs a single frame of a game started with startHeadless(), as fast as possible.
+     */
+    public static void step() {
+        if (!headless) {
+            throw new Error("Frames can only be stepped manually when running headless.");
+        }
+        pacer.beginFrame();
+        profiler.beginFrame();
+        runFrame();
+
+        // Count the time until the next call as waiting, since it's spent outside of the engine:
+        profiler.beginPhase(FramePhase.WAIT);
+    }
+
+    /**
+     * @return The image that the game draws into. When running headless, this holds the most recent frame.
+     */
+    public static BufferedImage getBufferImage() {
+        return screenImage;
+    }
+
+    private static void recreateBuffer() {
+        // Create the main render target:
+        bufferWidth = (int)Game.RESOLUTION.x;
+        bufferHeight = (int)Game.RESOLUTION.y;
+        screenImage = new BufferedImage(bufferWidth, bufferHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+        screenGraphics = screenImage.createGraphics();
+        screenPixels = new PixelBuffer(screenImage);
+        screenGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        screenGraphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        renderTarget = null;
+        bufferImage = screenImage;
+        bufferGraphics = screenGraphics;
+        bufferPixels = screenPixels;
+        if (renderCounters.isHeatmapEnabled()) {
+            renderCounters.setHeatmapSize(bufferWidth, bufferHeight);
+        }
+        applyCamera();
+    }
+
     private static void recreateWindow() {
         // Destroy the old window, if one exists:
         if (windowFrame != null) {
-            windowFrame.setVisible(false);
+            windowFrame.dispose();
         }
+        windowDirty = false;
 
         // Create the main render target:
-        bufferWidth = (int)Game.RESOLUTION.x;
-        bufferHeight = (int)Game.RESOLUTION.y;
-        bufferImage = new BufferedImage(bufferWidth, bufferHeight, BufferedImage.TYPE_INT_ARGB);
-        bufferGraphics = bufferImage.createGraphics();
-        bufferGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        bufferGraphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        recreateBuffer();
 
         // Create the screen render target:
         int windowWidth, windowHeight;
@@ -84,16 +212,9 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
             windowWidth = bufferWidth * Game.WINDOW_SCALE;
             windowHeight = bufferHeight * Game.WINDOW_SCALE;
         }
-        windowImage = new BufferedImage(windowWidth, windowHeight, BufferedImage.TYPE_INT_ARGB);
-        windowGraphics = windowImage.createGraphics();
 
         // Create a new window:
-        windowLabel = new JLabel(new ImageIcon(windowImage));
-        windowLabel.addMouseListener(instance);
-        windowLabel.addMouseMotionListener(instance);
-        windowLabel.addMouseWheelListener(instance);
         windowFrame = new JFrame();
-        windowFrame.setContentPane(windowLabel);
         windowFrame.addKeyListener(instance);
         windowFrame.setFocusTraversalKeysEnabled(false);
         windowFrame.setResizable(false);
@@ -103,65 +224,325 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
             windowFrame.setExtendedState(JFrame.MAXIMIZED_BOTH); 
             windowFrame.setUndecorated(true);
         }
+
+        // Present frames by page flipping on a canvas, if possible, or by copying them into a label otherwise:
+        windowCanvas = null;
+        windowStrategy = null;
+        windowLabel = null;
+        windowImage = null;
+        windowGraphics = null;
+        if (acceleratedPresentation) {
+            windowCanvas = new Canvas();
+            windowCanvas.setPreferredSize(new Dimension(windowWidth, windowHeight));
+            windowCanvas.setIgnoreRepaint(true);
+            windowCanvas.setFocusable(false);
+            windowCanvas.addMouseListener(instance);
+            windowCanvas.addMouseMotionListener(instance);
+            windowCanvas.addMouseWheelListener(instance);
+            windowFrame.setIgnoreRepaint(true);
+            windowFrame.getContentPane().add(windowCanvas);
+        } else {
+            windowImage = new BufferedImage(windowWidth, windowHeight, BufferedImage.TYPE_INT_ARGB);
+            windowGraphics = windowImage.createGraphics();
+            windowLabel = new JLabel(new ImageIcon(windowImage));
+            windowLabel.addMouseListener(instance);
+            windowLabel.addMouseMotionListener(instance);
+            windowLabel.addMouseWheelListener(instance);
+            windowFrame.setContentPane(windowLabel);
+        }
+
         windowFrame.pack();
         windowFrame.setVisible(true);
         windowFrame.requestFocusInWindow();
         windowFrame.setLocationRelativeTo(null);
+
+        // The buffer strategy can only be created once the canvas is on screen:
+        if (windowCanvas != null) {
+            try {
+                windowCanvas.createBufferStrategy(2);
+                windowStrategy = windowCanvas.getBufferStrategy();
+            } catch (Exception e) {
+                acceleratedPresentation = false;
+                recreateWindow();
+            }
+        }
     }
 
     private static void run() {
-        long lastFrameStart = System.nanoTime();
         while (true) {
             // Measure the time elapsed between one frame and the next:
-            long frameStart = System.nanoTime();
-            timeDelta = (frameStart - lastFrameStart) / 1000000000f;
-            lastFrameStart = frameStart;
+            pacer.beginFrame();
+            profiler.beginFrame();
 
-            // Process pre-update engine logic:
-            pollEvents();
+            runFrame();
 
-            // Toggle between windowed and fullscreen mode when Alt+Enter is pressed:
-            if (getKeyDown(Key.ENTER) && getKeyHeld(Key.ALT)) {
-                fullscreen = !fullscreen;
-                recreateWindow();
-            }
+            // Wait until the next frame:
+            profiler.beginPhase(FramePhase.WAIT);
+            pacer.waitForNextFrame();
+        }
+    }
+
+    private static void runFrame() {
+        // Process pre-update engine logic:
+        profiler.beginPhase(FramePhase.POLL_EVENTS);
+        pollEvents();
+
+        // Toggle between windowed and fullscreen mode when Alt+Enter is pressed:
+        if (!headless && getKeyDown(Key.ENTER) && getKeyHeld(Key.ALT)) {
+            fullscreen = !fullscreen;
+            windowDirty = true;
+        }
+        if (windowDirty && !headless) {
+            recreateWindow();
+        }
+
+        // Toggle the profiler overlay when F3 is pressed:
+        if (getKeyDown(Key.F3)) {
+            profiler.overlayVisible = !profiler.overlayVisible;
+        }
 
-            // Clear and start drawing into the render target:
-            bufferGraphics.setColor(Color.BLACK.color);
-            bufferGraphics.fillRect(0, 0, bufferWidth, bufferHeight);
-
-            // Update game logic:
-            game.update();
-
-            // Figure out how to scale our render target to fill the window:
-            int windowImageWidth = windowImage.getWidth();
-            int windowImageHeight = windowImage.getHeight();
-            float renderTargetScale = ((float)windowImageWidth / windowImageHeight > (float)bufferWidth / bufferHeight)
-                ? (float)windowImageHeight / bufferHeight
-                : (float)windowImageWidth / bufferWidth;
-
-            // Copy the render target to the screen:
-            windowGraphics.setColor(Color.BLACK.color);
-            windowGraphics.fillRect(0, 0, windowImageWidth, windowImageHeight);
-            scaledBufferSize = new Vector2(bufferWidth, bufferHeight).mul(renderTargetScale);
-            scaledBufferPos = new Vector2(windowImageWidth, windowImageHeight).sub(scaledBufferSize).mul(0.5f);
-            windowGraphics.drawImage(bufferImage, (int)scaledBufferPos.x, (int)scaledBufferPos.y, (int)scaledBufferSize.x, (int)scaledBufferSize.y, null);
+        // Clear and start drawing into the render target:
+        profiler.beginPhase(FramePhase.CLEAR);
+        frameNumber++;
+        renderCounters.reset();
+        hotReloader.apply();
+        bufferGraphics.setTransform(new AffineTransform());
+        bufferGraphics.setColor(Color.BLACK.color);
+        bufferGraphics.fillRect(0, 0, bufferWidth, bufferHeight);
+        applyCamera();
+        tiledFrame = tiledRendering;
+        tiledRenderer.active = tiledFrame;
+
+        // Run as many fixed-rate updates as have accumulated since the last frame:
+        profiler.beginPhase(FramePhase.FIXED_UPDATE);
+        timeDelta = pacer.getStepDelta();
+        while (pacer.takeFixedStep()) {
+            game.fixedUpdate();
+        }
+
+        // Update game logic:
+        profiler.beginPhase(FramePhase.UPDATE);
+        timeDelta = pacer.getFrameDelta();
+        game.update();
+
+        // Draw anything that was deferred until the end of the frame:
+        profiler.beginPhase(FramePhase.RENDER);
+        endBatch();
+        spriteBatch.layer = 0;
+        setRenderTarget(null);
+        tiledRenderer.render(screenImage, screenPixels);
+        tiledRenderer.active = false;
+        tiledFrame = false;
+        postProcessor.process(screenPixels);
+        renderCounters.drawHeatmap(screenPixels.pixels);
+        renderStats = renderCounters.snapshot(bufferWidth * bufferHeight);
+        frameRecorder.capture(screenPixels.pixels, timeDelta);
+
+        // There's no window to show the frame in when running headless:
+        if (!headless) {
+            present();
+        }
+    }
+
+    private static void present() {
+        // Figure out how to scale our render target to fill the window:
+        int windowImageWidth = (windowCanvas != null) ? windowCanvas.getWidth() : windowImage.getWidth();
+        int windowImageHeight = (windowCanvas != null) ? windowCanvas.getHeight() : windowImage.getHeight();
+        float renderTargetScale = ((float)windowImageWidth / windowImageHeight > (float)bufferWidth / bufferHeight)
+            ? (float)windowImageHeight / bufferHeight
+            : (float)windowImageWidth / bufferWidth;
+        scaledBufferSize = new Vector2(bufferWidth, bufferHeight).mul(renderTargetScale);
+        scaledBufferPos = new Vector2(windowImageWidth, windowImageHeight).sub(scaledBufferSize).mul(0.5f);
+
+        // Copy the render target to the screen:
+        profiler.beginPhase(FramePhase.BLIT);
+        if (windowStrategy != null) {
+            presentAccelerated(windowImageWidth, windowImageHeight);
+        } else {
+            drawWindow(windowGraphics, windowImageWidth, windowImageHeight);
+            profiler.beginPhase(FramePhase.REPAINT);
             windowFrame.repaint();
+        }
+    }
 
-            // Wait until the next frame:
-            try {
-                long frameLength = (System.nanoTime() - frameStart) / 1000000;
-                Thread.sleep(Math.max(0, 17 - frameLength));
-            }
-            catch (InterruptedException e) {
+    private static void presentAccelerated(int windowWidth, int windowHeight) {
+        // Video memory can be lost at any time (e.g. when switching display modes), in which case we redraw the frame:
+        GraphicsConfiguration config = windowCanvas.getGraphicsConfiguration();
+        do {
+            // Upload the render target into video memory once, so that scaling it up happens on the GPU:
+            if (bufferVolatileImage == null || bufferVolatileImage.getWidth() != bufferWidth || bufferVolatileImage.getHeight() != bufferHeight
+                || bufferVolatileImage.validate(config) == VolatileImage.IMAGE_INCOMPATIBLE) {
+                bufferVolatileImage = config.createCompatibleVolatileImage(bufferWidth, bufferHeight);
             }
+            Graphics2D volatileGraphics = bufferVolatileImage.createGraphics();
+            volatileGraphics.drawImage(screenImage, 0, 0, null);
+            volatileGraphics.dispose();
+
+            // Draw into the back buffer and flip it onto the screen:
+            do {
+                do {
+                    Graphics2D graphics = (Graphics2D)windowStrategy.getDrawGraphics();
+                    drawWindow(graphics, windowWidth, windowHeight);
+                    graphics.dispose();
+                } while (windowStrategy.contentsRestored());
+                profiler.beginPhase(FramePhase.REPAINT);
+                windowStrategy.show();
+            } while (windowStrategy.contentsLost());
+        } while (bufferVolatileImage.contentsLost());
+
+        // Make sure the frame actually reaches the screen now rather than whenever the window system gets to it:
+        Toolkit.getDefaultToolkit().sync();
+    }
+
+    private static void drawWindow(Graphics2D graphics, int windowWidth, int windowHeight) {
+        Image image = (windowStrategy != null) ? bufferVolatileImage : screenImage;
+        graphics.setColor(Color.BLACK.color);
+        graphics.fillRect(0, 0, windowWidth, windowHeight);
+        graphics.drawImage(image, (int)scaledBufferPos.x, (int)scaledBufferPos.y, (int)scaledBufferSize.x, (int)scaledBufferSize.y, null);
+        if (profiler.overlayVisible) {
+            profiler.drawOverlay(graphics, 8, 8);
+        }
+    }
+
+    /**
+     * Chooses how frames are shown in the window. Accelerated presentation page-flips a canvas and scales the frame
+     * up on the GPU where possible; the alternative copies the frame into a Swing label, which is slower but works
+     * everywhere. Accelerated presentation is used by default, and the engine falls back automatically if it fails.
+     * @param accelerated Whether or not accelerated presentation should be used.
+     */
+    public static void setAcceleratedPresentation(boolean accelerated) {
+        if (acceleratedPresentation != accelerated) {
+            acceleratedPresentation = accelerated;
+            windowDirty = true;
         }
     }
 
+    /**
+     * @return The amount of time (in seconds) since the last frame. When called from Game.fixedUpdate() this is the
+     *         length of a single fixed-rate update instead.
+     */
     public static float getTimeDelta() {
         return timeDelta;
     }
 
+    /**
+     * Sets the rate at which frames are drawn. Frames are paced precisely rather than by rounding to the nearest
+     * millisecond. The default is 60 frames per second.
+     * @param framesPerSecond The target frame rate. If zero, frames will be drawn as fast as possible.
+     */
+    public static void setFrameRate(float framesPerSecond) {
+        pacer.setFrameRate(framesPerSecond);
+    }
+
+    /**
+     * Enables fixed-rate updates. Each frame, Game.fixedUpdate() is called as many times as needed to keep up with
+     * the fixed rate, independent of the frame rate, before Game.update() is called once. Fixed-rate updates are
+     * disabled by default.
+     * Per-frame input (e.g. getKeyDown()) is only valid for a single frame, which may run zero or several fixed-rate
+     * updates, so it is best handled in Game.update().
+     * @param updatesPerSecond The fixed update rate, e.g. 60, 120 or 240. If zero, fixed-rate updates are disabled.
+     */
+    public static void setFixedUpdateRate(float updatesPerSecond) {
+        pacer.setFixedUpdateRate(updatesPerSecond);
+    }
+
+    /**
+     * Limits the number of fixed-rate updates that will be run in a single frame. If the game falls further behind
+     * than this, the remaining time is dropped and the game slows down instead of getting stuck catching up.
+     * @param steps The maximum number of fixed-rate updates per frame. The default is 5.
+     */
+    public static void setMaxUpdateSteps(int steps) {
+        pacer.setMaxUpdateSteps(steps);
+    }
+
+    /**
+     * @return How far (between 0 and 1) the current frame is between the previous fixed-rate update and the next
+     *         one, for interpolating between the two states when drawing. Always 1 if fixed-rate updates are disabled.
+     */
+    public static float getInterpolationAlpha() {
+        return pacer.getInterpolationAlpha();
+    }
+
+    /**
+     * Shows or hides an overlay with a graph of recent frame times, split up by phase. The overlay can also be toggled
+     * by pressing F3.
+     * @param visible Whether or not the overlay should be shown.
+     */
+    public static void setProfilerOverlayVisible(boolean visible) {
+        profiler.overlayVisible = visible;
+    }
+
+    /**
+     * @param percentile The percentile to query, between 0 and 100 (e.g. 99 for the 99th percentile).
+     * @return The frame time (in seconds) at the given percentile over the last few seconds of frames.
+     */
+    public static float getFrameTimePercentile(float percentile) {
+        return profiler.getFrameTimePercentile(percentile) / 1000000000f;
+    }
+
+    /**
+     * @param phase The phase of the frame to query.
+     * @return The average time (in seconds) spent in a phase of the frame over the last few seconds of frames.
+     */
+    public static float getFramePhaseTime(FramePhase phase) {
+        return profiler.getAveragePhaseTime(phase) / 1000000000f;
+    }
+
+    /**
+     * @return How much drawing work the last finished frame submitted: the number of each kind of draw call, how often
+     *         the graphics state had to change, and an estimate of how many pixels were drawn.
+     */
+    public static RenderStats getRenderStats() {
+        return renderStats;
+    }
+
+    /**
+     * Shows or hides the overdraw heatmap, which replaces the finished frame with a count of how many times each pixel
+     * of the screen was drawn: black for none, then blue, green, yellow, orange and red, and white for eight or more.
+     * Each draw is counted over its whole bounding box, so transparent parts of textures count as drawn too.
+     * @param visible Whether or not the heatmap should be shown.
+     */
+    public static void setOverdrawHeatmap(boolean visible) {
+        if (visible != renderCounters.isHeatmapEnabled()) {
+            renderCounters.setHeatmapSize(visible ? bufferWidth : 0, visible ? bufferHeight : 0);
+        }
+    }
+
+    /**
+     * Counts an area (in world coordinates) of the current render target as drawn, for getRenderStats().
+     */
+    private static void countPixels(float x1, float y1, float x2, float y2) {
+        int width = bufferImage.getWidth();
+        int height = bufferImage.getHeight();
+        if (isIntegerTranslation(bufferTransform)) {
+            int offsetX = (int)bufferTransform.getTranslateX();
+            int offsetY = (int)bufferTransform.getTranslateY();
+            renderCounters.fill((int)Math.floor(x1) + offsetX, (int)Math.floor(y1) + offsetY, (int)Math.ceil(x2) + offsetX, (int)Math.ceil(y2) + offsetY, width, height, renderTarget == null);
+            return;
+        }
+
+        // Count the bounding box of the area after the camera has zoomed and rotated it:
+        double[] corners = countCorners;
+        corners[0] = x1; corners[1] = y1;
+        corners[2] = x2; corners[3] = y1;
+        corners[4] = x1; corners[5] = y2;
+        corners[6] = x2; corners[7] = y2;
+        bufferTransform.transform(corners, 0, corners, 0, 4);
+        renderCounters.fill(
+            (int)Math.floor(Math.min(Math.min(corners[0], corners[2]), Math.min(corners[4], corners[6]))),
+            (int)Math.floor(Math.min(Math.min(corners[1], corners[3]), Math.min(corners[5], corners[7]))),
+            (int)Math.ceil(Math.max(Math.max(corners[0], corners[2]), Math.max(corners[4], corners[6]))),
+            (int)Math.ceil(Math.max(Math.max(corners[1], corners[3]), Math.max(corners[5], corners[7]))),
+            width, height, renderTarget == null);
+    }
+
+    /**
+     * Counts a change of a graphics object's transform, for getRenderStats(). This can be called from any thread.
+     */
+    static void countTransformChange() {
+        renderCounters.transformChanges.increment();
+    }
+
     // ======================================================================================
     // Content loading
     // ======================================================================================
@@ -170,18 +551,48 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
         return Paths.get("assets", path).toAbsolutePath().toString();
     }
 
+    /**
+     * @return Whether or not an asset can be loaded from the asset archive (see AssetPacker), which is opened the
+     *         first time this is called if there is one.
+     */
+    private static synchronized boolean isInAssetArchive(String path) {
+        if (!assetArchiveChecked) {
+            // Only try once, so that an archive that can't be opened fails the first load rather than every load:
+            assetArchiveChecked = true;
+            File file = Paths.get("assets.pak").toAbsolutePath().toFile();
+            if (file.isFile()) {
+                assetArchive = AssetArchive.open(file);
+            }
+        }
+        return assetArchive != null && assetArchive.contains(path);
+    }
+
     /**
      * Loads a texture from the "assets" directory. Supports the following formats: PNG, GIF, JPEG.
+     * Loading the same texture again returns the same texture object instead of reading the file again, until it
+     * has been released as many times as it was loaded (see releaseAsset()).
      * @param path The path to the texture file, relative to the "assets" directory.
      * @return A texture object.
      */
     public static Texture loadTexture(String path) {
-        ImageIcon icon = new ImageIcon(getAssetPath(path));
-        if (icon.getImageLoadStatus() != MediaTracker.COMPLETE) {
-            throw new Error("Failed to load texture.");
-        }
+        return assetCache.acquire("Texture", path, "", () -> new Texture(loadImage(path)));
+    }
 
-        return new Texture(icon.getImage());
+    /**
+     * Loads a set of textures from the "assets" directory and packs them together into a texture atlas, which makes
+     * drawing them faster. Supports the following formats: PNG, GIF, JPEG.
+     * The packed atlas is cached in the "assets/.cache" directory, and is only packed again if the files change.
+     * @param pageSize The width and height of each atlas page (in pixels), e.g. 2048.
+     * @param padding The number of pixels between textures. Use at least 1 if textures will be scaled or rotated.
+     * @param paths The paths to the texture files, relative to the "assets" directory.
+     * @return A texture atlas object, from which the packed textures can be retrieved by path.
+     */
+    public static TextureAtlas loadTextureAtlas(int pageSize, int padding, String... paths) {
+        File[] files = new File[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            files[i] = new File(getAssetPath(paths[i]));
+        }
+        return TextureAtlas.pack(paths, files, pageSize, padding, new File(getAssetPath(".cache")));
     }
 
     /**
@@ -195,15 +606,15 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
      * @return A resizable texture object.
      */
     public static ResizableTexture loadResizableTexture(String path, int leftOffset, int rightOffset, int topOffset, int bottomOffset) {
-        ImageIcon icon = new ImageIcon(getAssetPath(path));
-        if (icon.getImageLoadStatus() != MediaTracker.COMPLETE) {
-            throw new Error("Failed to load texture.");
-        }
+        return assetCache.acquire("ResizableTexture", path, leftOffset + "," + rightOffset + "," + topOffset + "," + bottomOffset,
+            () -> readResizableTexture(path, leftOffset, rightOffset, topOffset, bottomOffset));
+    }
 
+    private static ResizableTexture readResizableTexture(String path, int leftOffset, int rightOffset, int topOffset, int bottomOffset) {
         // Convert the relative offsets (from the edges) into absolute offsets (from the origin):
-        Image image = icon.getImage();
-        int width = image.getWidth(null);
-        int height = image.getHeight(null);
+        BufferedImage image = loadImage(path);
+        int width = image.getWidth();
+        int height = image.getHeight();
         rightOffset = width - rightOffset - 1;
         bottomOffset = height - bottomOffset - 1;
 
@@ -214,6 +625,58 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
         return new ResizableTexture(image, leftOffset, rightOffset, topOffset, bottomOffset);
     }
 
+    private static BufferedImage loadImage(String path) {
+        // Images in the asset archive are already decoded and converted:
+        if (isInAssetArchive(path)) {
+            return assetArchive.readImage(path);
+        }
+
+        BufferedImage image;
+        try {
+            image = ImageIO.read(new File(getAssetPath(path)));
+        } catch (IOException e) {
+            throw new Error("Failed to load texture: " + path, e);
+        }
+        if (image == null) {
+            throw new Error("Failed to load texture: " + path + " is not in a supported format.");
+        }
+        return convertImage(image);
+    }
+
+    /**
+     * Converts an image into the same pixel layout as the render target, so that drawing it takes Java2D's fastest
+     * path instead of converting every pixel on every draw. Images without any transparent pixels are stored opaque,
+     * which is faster still.
+     * @param image The image to convert.
+     * @return A premultiplied ARGB or opaque RGB copy of the image.
+     */
+    static BufferedImage convertImage(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        // Look for any pixels that aren't fully opaque:
+        boolean opaque = true;
+        if (image.getColorModel().hasAlpha()) {
+            int[] row = new int[width];
+            for (int y = 0; y < height && opaque; y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0; x < width; x++) {
+                    if ((row[x] >>> 24) != 0xFF) {
+                        opaque = false;
+                        break;
+                    }
+                }
+            }
+        }
+
+        BufferedImage converted = new BufferedImage(width, height, opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D graphics = converted.createGraphics();
+        graphics.setComposite(AlphaComposite.Src);
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return converted;
+    }
+
     /**
      * Loads a font from the "assets" directory for a single text size. Supports the following formats: TTF, OTF.
      * @param path The path to the font file, relative to the "assets" directory.
@@ -221,9 +684,17 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
      * @return A font object.
      */
     public static Font loadFont(String path, float pointSize) {
+        return assetCache.acquire("Font", path, String.valueOf(pointSize), () -> readFont(path, pointSize));
+    }
+
+    private static Font readFont(String path, float pointSize) {
         try {
-            File file = new File(getAssetPath(path));
-            java.awt.Font font = java.awt.Font.createFont(java.awt.Font.TRUETYPE_FONT, file).deriveFont(pointSize);
+            java.awt.Font font;
+            if (isInAssetArchive(path)) {
+                font = java.awt.Font.createFont(java.awt.Font.TRUETYPE_FONT, assetArchive.readFile(path)).deriveFont(pointSize);
+            } else {
+                font = java.awt.Font.createFont(java.awt.Font.TRUETYPE_FONT, new File(getAssetPath(path))).deriveFont(pointSize);
+            }
             GraphicsEnvironment.getLocalGraphicsEnvironment().registerFont(font);
             return new Font(font);
         } catch (Exception e) {
@@ -237,6 +708,13 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
      * @return A sound object.
      */
     public static Sound loadSound(String path) {
+        return assetCache.acquire("Sound", path, "", () -> readSound(path));
+    }
+
+    private static Sound readSound(String path) {
+        if (isInAssetArchive(path)) {
+            return assetArchive.readSound(path);
+        }
         try {
             File file = new File(getAssetPath(path));
             // Make sure that we can read the stream here, even though we do it from scratch every time we play the sound:
@@ -247,6 +725,108 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
         }
     }
 
+    /**
+     * Releases an asset that was loaded with one of the load functions (including the asynchronous ones), once for
+     * each time it was loaded. Once an asset has been released as many times as it was loaded, it may be dropped from
+     * memory if the asset cache needs room (see setAssetCacheSize()), after which loading it again reads it from disk
+     * again. The asset shouldn't be used after it has been released.
+     * @param asset The texture, resizable texture, font or sound to release.
+     */
+    public static void releaseAsset(Object asset) {
+        assetCache.release(asset);
+    }
+
+    /**
+     * Sets how much memory loaded assets may use before released assets are dropped. Assets that are still referenced
+     * are never dropped, even if they use more than this.
+     * @param bytes The number of bytes of decoded pixel data. The default is 268435456 (256 MB). If zero, assets are
+     *              dropped as soon as they are released.
+     */
+    public static void setAssetCacheSize(long bytes) {
+        assetCache.setMaxBytes(bytes);
+    }
+
+    /**
+     * @return The memory used by each loaded asset (including released assets that haven't been dropped yet), largest
+     *         first.
+     */
+    public static java.util.List<AssetInfo> getLoadedAssets() {
+        return assetCache.getInfo();
+    }
+
+    /**
+     * @return The total number of bytes of decoded pixel data held by loaded assets.
+     */
+    public static long getLoadedAssetBytes() {
+        return assetCache.getBytes();
+    }
+
+    /**
+     * Enables hot reloading, for use during development. While enabled, the "assets" directory is watched for changes,
+     * and loaded textures, resizable textures, fonts and sounds whose files change are reloaded in the background and
+     * then updated at the start of the next frame (including assets that were loaded from the asset archive). The game
+     * keeps using the same objects, which simply draw or play the new contents. Textures whose size changes can't be
+     * reloaded.
+     * @param enabled Whether or not to watch for changes.
+     */
+    public static void setHotReload(boolean enabled) {
+        if (enabled) {
+            hotReloader.start(Paths.get("assets").toAbsolutePath());
+        } else {
+            hotReloader.stop();
+        }
+    }
+
+    /**
+     * Starts loading a texture in the background, like loadTexture(). Assets loaded in the background are loaded in
+     * parallel on every CPU core, so a game can draw a loading screen (see getLoadingProgress()) while they load.
+     * @param path The path to the texture file, relative to the "assets" directory.
+     * @return A handle to the texture, which waits for it to finish loading when it's retrieved.
+     */
+    public static AssetHandle<Texture> loadTextureAsync(String path) {
+        return assetLoader.load(path, () -> loadTexture(path));
+    }
+
+    /**
+     * Starts loading a resizable texture in the background, like loadResizableTexture().
+     * @return A handle to the resizable texture, which waits for it to finish loading when it's retrieved.
+     */
+    public static AssetHandle<ResizableTexture> loadResizableTextureAsync(String path, int leftOffset, int rightOffset, int topOffset, int bottomOffset) {
+        return assetLoader.load(path, () -> loadResizableTexture(path, leftOffset, rightOffset, topOffset, bottomOffset));
+    }
+
+    /**
+     * Starts loading a font in the background, like loadFont().
+     * @return A handle to the font, which waits for it to finish loading when it's retrieved.
+     */
+    public static AssetHandle<Font> loadFontAsync(String path, float pointSize) {
+        return assetLoader.load(path, () -> loadFont(path, pointSize));
+    }
+
+    /**
+     * Starts loading a sound in the background, like loadSound().
+     * @return A handle to the sound, which waits for it to finish loading when it's retrieved.
+     */
+    public static AssetHandle<Sound> loadSoundAsync(String path) {
+        return assetLoader.load(path, () -> loadSound(path));
+    }
+
+    /**
+     * @return The fraction of the assets being loaded in the background that have finished loading, between 0 and 1.
+     *         This counts from the first asset loaded after the last time everything had finished, and is 1 when
+     *         nothing is loading.
+     */
+    public static float getLoadingProgress() {
+        return assetLoader.getProgress();
+    }
+
+    /**
+     * @return The number of assets being loaded in the background that haven't finished loading yet.
+     */
+    public static int getPendingLoadCount() {
+        return assetLoader.getPendingCount();
+    }
+
     // ======================================================================================
     // Primitive drawing
     // ======================================================================================
@@ -258,8 +838,28 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
      * @param color The color of the line.
      */
     public static void drawLine(Vector2 start, Vector2 end, Color color) {
-        bufferGraphics.setColor(color.color);
-        bufferGraphics.drawLine((int)start.x, (int)start.y, (int)end.x, (int)end.y);
+        int x1 = (int)start.x;
+        int y1 = (int)start.y;
+        int x2 = (int)end.x;
+        int y2 = (int)end.y;
+        if (!isVisible(Math.min(x1, x2) - 2, Math.min(y1, y2) - 2, Math.max(x1, x2) + 2, Math.max(y1, y2) + 2)) {
+            renderCounters.culledDraws++;
+            return;
+        }
+        renderCounters.primitiveDraws++;
+        countPixels(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2) + 1, Math.max(y1, y2) + 1);
+        java.awt.Color awtColor = color.color;
+        if (tiledRenderer.active) {
+            record(Math.min(x1, x2) - 2, Math.min(y1, y2) - 2, Math.max(x1, x2) + 2, Math.max(y1, y2) + 2,
+                (graphics, pixels, base, scratch) -> drawLine(graphics, x1, y1, x2, y2, awtColor));
+        } else {
+            drawLine(bufferGraphics, x1, y1, x2, y2, awtColor);
+        }
+    }
+
+    private static void drawLine(Graphics2D graphics, int x1, int y1, int x2, int y2, java.awt.Color color) {
+        graphics.setColor(color);
+        graphics.drawLine(x1, y1, x2, y2);
     }
 
     /**
@@ -269,11 +869,31 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
      * @param filled Whether or not the rectangle should be filled.
      */
     public static void drawRect(Bounds2 bounds, Color color, boolean filled) {
-        bufferGraphics.setColor(color.color);
+        int x = (int)bounds.position.x;
+        int y = (int)bounds.position.y;
+        int width = (int)bounds.size.x;
+        int height = (int)bounds.size.y;
+        if (!isVisible(Math.min(x, x + width) - 2, Math.min(y, y + height) - 2, Math.max(x, x + width) + 2, Math.max(y, y + height) + 2)) {
+            renderCounters.culledDraws++;
+            return;
+        }
+        renderCounters.primitiveDraws++;
+        countPixels(Math.min(x, x + width), Math.min(y, y + height), Math.max(x, x + width) + (filled ? 0 : 1), Math.max(y, y + height) + (filled ? 0 : 1));
+        java.awt.Color awtColor = color.color;
+        if (tiledRenderer.active) {
+            record(Math.min(x, x + width) - 2, Math.min(y, y + height) - 2, Math.max(x, x + width) + 2, Math.max(y, y + height) + 2,
+                (graphics, pixels, base, scratch) -> drawRect(graphics, x, y, width, height, awtColor, filled));
+        } else {
+            drawRect(bufferGraphics, x, y, width, height, awtColor, filled);
+        }
+    }
+
+    private static void drawRect(Graphics2D graphics, int x, int y, int width, int height, java.awt.Color color, boolean filled) {
+        graphics.setColor(color);
         if (filled) {
-            bufferGraphics.fillRect((int)bounds.position.x, (int)bounds.position.y, (int)bounds.size.x, (int)bounds.size.y);
+            graphics.fillRect(x, y, width, height);
         } else {
-            bufferGraphics.drawRect((int)bounds.position.x, (int)bounds.position.y, (int)bounds.size.x, (int)bounds.size.y);
+            graphics.drawRect(x, y, width, height);
         }
     }
 
@@ -285,11 +905,162 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
      * @param filled Whether or not the circle should be filled.
      */
     public static void drawCircle(Vector2 center, float radius, Color color, boolean filled) {
-        bufferGraphics.setColor(color.color);
+        int x = (int)(center.x - radius);
+        int y = (int)(center.y - radius);
+        int size = (int)(radius * 2);
+        if (!isVisible(x - 2, y - 2, x + size + 2, y + size + 2)) {
+            renderCounters.culledDraws++;
+            return;
+        }
+        renderCounters.primitiveDraws++;
+        countPixels(x, y, x + size + 1, y + size + 1);
+        java.awt.Color awtColor = color.color;
+        if (tiledRenderer.active) {
+            record(x - 2, y - 2, x + size + 2, y + size + 2,
+                (graphics, pixels, base, scratch) -> drawCircle(graphics, x, y, size, awtColor, filled));
+        } else {
+            drawCircle(bufferGraphics, x, y, size, awtColor, filled);
+        }
+    }
+
+    private static void drawCircle(Graphics2D graphics, int x, int y, int size, java.awt.Color color, boolean filled) {
+        graphics.setColor(color);
         if (filled) {
-            bufferGraphics.fillOval((int)(center.x - radius), (int)(center.y - radius), (int)(radius * 2), (int)(radius * 2));
+            graphics.fillOval(x, y, size, size);
+        } else {
+            graphics.drawOval(x, y, size, size);
+        }
+    }
+
+    /**
+     * Draws many lines at once, which is much faster than calling drawLine() for each of them.
+     * Lines are grouped by color, so lines of different colors may not be drawn in the order they were given.
+     * @param points The start x, start y, end x and end y of each line.
+     * @param colors The color of each line in ARGB order (see Color.getARGB()), or a single color for all of them.
+     * @param count The number of lines.
+     */
+    public static void drawLines(float[] points, int[] colors, int count) {
+        if (count == 0) {
+            return;
+        }
+        float x1 = Float.MAX_VALUE, y1 = Float.MAX_VALUE, x2 = -Float.MAX_VALUE, y2 = -Float.MAX_VALUE;
+        for (int i = 0; i < count * 4; i += 2) {
+            x1 = Math.min(x1, points[i]);
+            y1 = Math.min(y1, points[i + 1]);
+            x2 = Math.max(x2, points[i]);
+            y2 = Math.max(y2, points[i + 1]);
+        }
+        if (!isVisible(x1 - 2, y1 - 2, x2 + 2, y2 + 2)) {
+            renderCounters.culledDraws += count;
+            return;
+        }
+        renderCounters.primitiveDraws += count;
+        for (int i = 0; i < count * 4; i += 4) {
+            countPixels(Math.min(points[i], points[i + 2]), Math.min(points[i + 1], points[i + 3]), Math.max(points[i], points[i + 2]) + 1, Math.max(points[i + 1], points[i + 3]) + 1);
+        }
+        if (tiledRenderer.active) {
+            float[] pointsCopy = Arrays.copyOf(points, count * 4);
+            int[] colorsCopy = Arrays.copyOf(colors, Math.min(colors.length, count));
+            record(x1 - 2, y1 - 2, x2 + 2, y2 + 2, (graphics, pixels, base, scratch) -> Primitives.drawLines(graphics, pointsCopy, colorsCopy, count));
+        } else {
+            Primitives.drawLines(bufferGraphics, points, colors, count);
+        }
+    }
+
+    /**
+     * Draws many rectangles at once, which is much faster than calling drawRect() for each of them.
+     * Rectangles are grouped by color, so rectangles of different colors may not be drawn in the order they were
+     * given, and overlapping translucent rectangles of the same color may not blend with each other.
+     * @param bounds The x, y, width and height of each rectangle.
+     * @param colors The color of each rectangle in ARGB order (see Color.getARGB()), or a single color for all of them.
+     * @param count The number of rectangles.
+     * @param filled Whether or not the rectangles should be filled.
+     */
+    public static void drawRects(float[] bounds, int[] colors, int count, boolean filled) {
+        if (count == 0) {
+            return;
+        }
+        float x1 = Float.MAX_VALUE, y1 = Float.MAX_VALUE, x2 = -Float.MAX_VALUE, y2 = -Float.MAX_VALUE;
+        for (int i = 0; i < count * 4; i += 4) {
+            x1 = Math.min(x1, Math.min(bounds[i], bounds[i] + bounds[i + 2]));
+            y1 = Math.min(y1, Math.min(bounds[i + 1], bounds[i + 1] + bounds[i + 3]));
+            x2 = Math.max(x2, Math.max(bounds[i], bounds[i] + bounds[i + 2]));
+            y2 = Math.max(y2, Math.max(bounds[i + 1], bounds[i + 1] + bounds[i + 3]));
+        }
+        if (!isVisible(x1 - 2, y1 - 2, x2 + 2, y2 + 2)) {
+            renderCounters.culledDraws += count;
+            return;
+        }
+        renderCounters.primitiveDraws += count;
+        // Outlines cover one more pixel on the right and bottom, like drawRect():
+        int outline = filled ? 0 : 1;
+        for (int i = 0; i < count * 4; i += 4) {
+            countPixels(Math.min(bounds[i], bounds[i] + bounds[i + 2]), Math.min(bounds[i + 1], bounds[i + 1] + bounds[i + 3]), Math.max(bounds[i], bounds[i] + bounds[i + 2]) + outline, Math.max(bounds[i + 1], bounds[i + 1] + bounds[i + 3]) + outline);
+        }
+        if (tiledRenderer.active) {
+            float[] boundsCopy = Arrays.copyOf(bounds, count * 4);
+            int[] colorsCopy = Arrays.copyOf(colors, Math.min(colors.length, count));
+            record(x1 - 2, y1 - 2, x2 + 2, y2 + 2, (graphics, pixels, base, scratch) -> drawRects(graphics, pixels, base, boundsCopy, colorsCopy, count, filled));
+        } else {
+            drawRects(bufferGraphics, bufferPixels, bufferTransform, bounds, colors, count, filled);
+        }
+    }
+
+    private static void drawRects(Graphics2D graphics, PixelBuffer pixels, AffineTransform base, float[] bounds, int[] colors, int count, boolean filled) {
+        // Filled rectangles that line up with whole pixels can be filled without Java2D:
+        if (filled && pixels != null && isIntegerTranslation(base)) {
+            Primitives.fillRects(pixels, (int)base.getTranslateX(), (int)base.getTranslateY(), bounds, colors, count);
+        } else {
+            Primitives.drawRects(graphics, bounds, colors, count, filled);
+        }
+    }
+
+    /**
+     * Draws many circles at once, which is much faster than calling drawCircle() for each of them.
+     * Circles are grouped by color, so circles of different colors may not be drawn in the order they were given, and
+     * overlapping translucent circles of the same color may not blend with each other.
+     * @param circles The center x, center y and radius of each circle.
+     * @param colors The color of each circle in ARGB order (see Color.getARGB()), or a single color for all of them.
+     * @param count The number of circles.
+     * @param filled Whether or not the circles should be filled.
+     */
+    public static void drawCircles(float[] circles, int[] colors, int count, boolean filled) {
+        if (count == 0) {
+            return;
+        }
+        float x1 = Float.MAX_VALUE, y1 = Float.MAX_VALUE, x2 = -Float.MAX_VALUE, y2 = -Float.MAX_VALUE;
+        for (int i = 0; i < count * 3; i += 3) {
+            float radius = Math.abs(circles[i + 2]);
+            x1 = Math.min(x1, circles[i] - radius);
+            y1 = Math.min(y1, circles[i + 1] - radius);
+            x2 = Math.max(x2, circles[i] + radius);
+            y2 = Math.max(y2, circles[i + 1] + radius);
+        }
+        if (!isVisible(x1 - 2, y1 - 2, x2 + 2, y2 + 2)) {
+            renderCounters.culledDraws += count;
+            return;
+        }
+        renderCounters.primitiveDraws += count;
+        for (int i = 0; i < count * 3; i += 3) {
+            float radius = Math.abs(circles[i + 2]);
+            countPixels(circles[i] - radius, circles[i + 1] - radius, circles[i] + radius + 1, circles[i + 1] + radius + 1);
+        }
+        Primitives.prepareCircleMasks(circles, count, filled);
+        if (tiledRenderer.active) {
+            float[] circlesCopy = Arrays.copyOf(circles, count * 3);
+            int[] colorsCopy = Arrays.copyOf(colors, Math.min(colors.length, count));
+            record(x1 - 2, y1 - 2, x2 + 2, y2 + 2, (graphics, pixels, base, scratch) -> drawCircles(graphics, pixels, base, circlesCopy, colorsCopy, count, filled));
+        } else {
+            drawCircles(bufferGraphics, bufferPixels, bufferTransform, circles, colors, count, filled);
+        }
+    }
+
+    private static void drawCircles(Graphics2D graphics, PixelBuffer pixels, AffineTransform base, float[] circles, int[] colors, int count, boolean filled) {
+        // Circles that line up with whole pixels can be drawn from cached masks without Java2D:
+        if (pixels != null && isIntegerTranslation(base)) {
+            Primitives.drawCircles(graphics, pixels, (int)base.getTranslateX(), (int)base.getTranslateY(), circles, colors, count, filled);
         } else {
-            bufferGraphics.drawOval((int)(center.x - radius), (int)(center.y - radius), (int)(radius * 2), (int)(radius * 2));
+            Primitives.drawCircles(graphics, circles, colors, count, filled);
         }
     }
 
@@ -303,7 +1074,17 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
      * @param position The position where the texture will be drawn.
      */
     public static void drawTexture(Texture texture, Vector2 position) {
-        drawTexture(texture, position, null, 0, null, MirrorMode.NONE, null, InterpolationMode.LINEAR);
+        drawTexture(texture, position, null, 0, null, MirrorMode.NONE, null, InterpolationMode.LINEAR, null);
+    }
+
+    /**
+     * Draws a texture with a tint.
+     * @param texture The texture to draw.
+     * @param position The position where the texture will be drawn.
+     * @param tint The color that every pixel of the texture is multiplied by, including its alpha.
+     */
+    public static void drawTexture(Texture texture, Vector2 position, Color tint) {
+        drawTexture(texture, position, null, 0, null, MirrorMode.NONE, null, InterpolationMode.LINEAR, tint);
     }
 
     /**
@@ -318,6 +1099,26 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
      * @param interpolationMode The interpolation mode to use when drawing the texture. If you are unsure what to put here, use TextureScaleMode.LINEAR as a default value.
      */
     public static void drawTexture(Texture texture, Vector2 position, Vector2 size, float rotation, Vector2 pivot, MirrorMode mirror, Bounds2 source, InterpolationMode interpolationMode) {
+        drawTexture(texture, position, size, rotation, pivot, mirror, source, interpolationMode, null);
+    }
+
+    /**
+     * Draws a texture.
+     * @param texture The texture to draw.
+     * @param position The position where the texture will be drawn.
+     * @param size The destination size of the texture. If null, the original texture size will be used.
+     * @param rotation The amount the texture will be rotated clockwise (in degrees). If zero, the texture will not be rotated.
+     * @param pivot The offset from position to the pivot that the texture will be rotated about. If null, the center of the destination bounds will be used.
+     * @param mirror The mirroring to apply to the texture. If you are unsure what to put here, use TextureMirror.NONE as a default value.
+     * @param source The source bounds of the texture to draw. If null, the entire texture will be drawn.
+     * @param interpolationMode The interpolation mode to use when drawing the texture. If you are unsure what to put here, use TextureScaleMode.LINEAR as a default value.
+     * @param tint The color that every pixel of the texture is multiplied by, including its alpha. If null or white, the texture will not be tinted.
+     */
+    public static void drawTexture(Texture texture, Vector2 position, Vector2 size, float rotation, Vector2 pivot, MirrorMode mirror, Bounds2 source, InterpolationMode interpolationMode, Color tint) {
+        if (texture == renderTarget) {
+            throw new Error("A render target can't be drawn into itself.");
+        }
+
         int dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2;
         if (source != null) {
             // Use the specified source coordinates:
@@ -341,51 +1142,234 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
             dy2 = dy1 + texture.height;
         }
 
-        // Apply the size override, if specified:
-        if (size != null) {
-            dx2 = dx1 + (int)size.x;
-            dy2 = dy1 + (int)size.y;
+        // Apply the size override, if specified:
+        if (size != null) {
+            dx2 = dx1 + (int)size.x;
+            dy2 = dy1 + (int)size.y;
+        }
+
+        // Set the pivot to the center of the image, if unspecified:
+        float pivotX = (pivot != null) ? pivot.x : (dx2 - dx1) / 2;
+        float pivotY = (pivot != null) ? pivot.y : (dy2 - dy1) / 2;
+
+        // Skip sprites that are entirely outside of the view:
+        if (!isSpriteVisible(dx1, dy1, dx2, dy2, rotation, pivotX, pivotY)) {
+            renderCounters.culledDraws++;
+            return;
+        }
+
+        // Draw a tinted copy of the texture instead, which has the same size:
+        if (tint != null && tint.getARGB() != 0xFFFFFFFF) {
+            if (tint.getARGB() >>> 24 == 0) {
+                return;
+            }
+            texture = tintCache.get(texture, tint.getARGB(), frameNumber);
+        }
+
+        renderCounters.textureDraws++;
+        if (rotation == 0) {
+            countPixels(Math.min(dx1, dx2), Math.min(dy1, dy2), Math.max(dx1, dx2), Math.max(dy1, dy2));
+        } else {
+            float centerX = dx1 + pivotX;
+            float centerY = dy1 + pivotY;
+            float radius = getSpriteRadius(dx1, dy1, dx2, dy2, pivotX, pivotY) - 2;
+            countPixels(centerX - radius, centerY - radius, centerX + radius, centerY + radius);
+        }
+
+        // Save the draw for later if we're batching:
+        if (spriteBatch.active) {
+            spriteBatch.add(texture, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, rotation, pivotX, pivotY, mirror, interpolationMode);
+        } else {
+            submitSprite(texture, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, rotation, pivotX, pivotY, mirror, interpolationMode);
+        }
+    }
+
+    /**
+     * Draws a texture now, or records it if tiled rendering is enabled. The parameters are the same as drawSprite().
+     */
+    static void submitSprite(Texture texture, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, float rotation, float pivotX, float pivotY, MirrorMode mirror, InterpolationMode interpolationMode) {
+        // Draw a pre-drawn variant of rotated and mirrored sprites instead, if they are being cached:
+        if (spriteVariantCache.isEnabled() && (rotation != 0 || mirror != MirrorMode.NONE) && dx2 > dx1 && dy2 > dy1 && isIntegerTranslation(bufferTransform)) {
+            int angle = spriteVariantCache.snap(rotation);
+            if (angle == 0 && mirror == MirrorMode.NONE) {
+                submitSprite(texture, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, 0, pivotX, pivotY, mirror, interpolationMode);
+                return;
+            }
+
+            // Unscaled sprites that are only mirrored are already drawn with a single copy:
+            if (angle != 0 || dx2 - dx1 != sx2 - sx1 || dy2 - dy1 != sy2 - sy1) {
+                SpriteVariantCache.Variant variant = spriteVariantCache.get(texture, dx2 - dx1, dy2 - dy1, sx1, sy1, sx2, sy2, angle, pivotX, pivotY, mirror, interpolationMode);
+                if (variant != null) {
+                    int x = dx1 + variant.x;
+                    int y = dy1 + variant.y;
+                    int width = variant.texture.width;
+                    int height = variant.texture.height;
+                    submitSprite(variant.texture, x, y, x + width, y + height, 0, 0, width, height, 0, 0, 0, MirrorMode.NONE, InterpolationMode.NEAREST);
+                    return;
+                }
+            }
+        }
+
+        if (!tiledRenderer.active) {
+            drawSprite(bufferGraphics, bufferPixels, bufferTransform, spriteTransform, texture, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, rotation, pivotX, pivotY, mirror, interpolationMode);
+            return;
+        }
+
+        TiledRenderer.Command command = (graphics, pixels, base, scratch) ->
+            drawSprite(graphics, pixels, base, scratch, texture, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, rotation, pivotX, pivotY, mirror, interpolationMode);
+        if (rotation == 0) {
+            record(Math.min(dx1, dx2) - 2, Math.min(dy1, dy2) - 2, Math.max(dx1, dx2) + 2, Math.max(dy1, dy2) + 2, command);
+        } else {
+            float centerX = dx1 + pivotX;
+            float centerY = dy1 + pivotY;
+            float radius = getSpriteRadius(dx1, dy1, dx2, dy2, pivotX, pivotY);
+            record(centerX - radius, centerY - radius, centerX + radius, centerY + radius, command);
+        }
+    }
+
+    /**
+     * @return Whether or not any part of a sprite could be visible. The parameters are the same as drawSprite().
+     */
+    private static boolean isSpriteVisible(int dx1, int dy1, int dx2, int dy2, float rotation, float pivotX, float pivotY) {
+        if (rotation == 0) {
+            // Mirroring can shift the sprite by a pixel, and filtering can spill over by another:
+            return isVisible(Math.min(dx1, dx2) - 2, Math.min(dy1, dy2) - 2, Math.max(dx1, dx2) + 2, Math.max(dy1, dy2) + 2);
         }
+        float centerX = dx1 + pivotX;
+        float centerY = dy1 + pivotY;
+        float radius = getSpriteRadius(dx1, dy1, dx2, dy2, pivotX, pivotY);
+        return isVisible(centerX - radius, centerY - radius, centerX + radius, centerY + radius);
+    }
 
-        // Set the pivot to the center of the image, if unspecified:
-        Vector2 center = new Vector2((dx2 - dx1) / 2, (dy2 - dy1) / 2);
-        if (pivot == null) {
-            pivot = center;
+    /**
+     * @return The radius of a circle around a sprite's pivot that contains the sprite at any rotation.
+     */
+    private static float getSpriteRadius(int dx1, int dy1, int dx2, int dy2, float pivotX, float pivotY) {
+        return (float)Math.hypot(Math.max(Math.abs(pivotX), Math.abs(dx2 - dx1 - pivotX)), Math.max(Math.abs(pivotY), Math.abs(dy2 - dy1 - pivotY))) + 2;
+    }
+
+    /**
+     * Enables caching of rotated and mirrored sprites. While enabled, rotations are snapped to a fixed number of
+     * angles, and each combination of texture, source bounds, size, angle, pivot and mirroring that is drawn is kept
+     * pre-drawn so that it can be drawn as fast as a sprite that isn't transformed. This suits pixel art games that
+     * draw the same sprites flipped or at a few angles many times.
+     * @param rotationSteps The number of angles in a full turn that rotations snap to (e.g. 16). If zero, the cache
+     *                      is disabled and sprites are rotated exactly.
+     * @param maxPixels The total number of pixels that pre-drawn sprites may use. The least recently drawn are dropped
+     *                  first.
+     */
+    public static void setSpriteVariantCache(int rotationSteps, int maxPixels) {
+        spriteVariantCache.configure(rotationSteps, maxPixels);
+    }
+
+    /**
+     * Sets how many pixels the cache of tinted textures may use in total. Textures drawn with the same tint on more
+     * than one frame are kept tinted, so that drawing them again costs the same as drawing an untinted texture.
+     * @param pixels The total number of pixels. The default is 1048576. If zero, nothing is cached.
+     */
+    public static void setTintCacheSize(int pixels) {
+        tintCache.setMaxPixels(pixels);
+    }
+
+    static void setInterpolationMode(Graphics2D graphics, InterpolationMode interpolationMode) {
+        Object hint = (interpolationMode == InterpolationMode.LINEAR) ? RenderingHints.VALUE_INTERPOLATION_BILINEAR : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+        if (graphics.getRenderingHint(RenderingHints.KEY_INTERPOLATION) != hint) {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, hint);
+            renderCounters.interpolationChanges.increment();
+        }
+    }
+
+    /**
+     * Draws a region of a texture, rotated and mirrored within its destination bounds.
+     * The source coordinates are relative to the texture, which may itself be a region of a larger image.
+     * @param graphics The graphics to draw with.
+     * @param pixels The pixels that the graphics draws into, if they can be drawn into directly, or null otherwise.
+     * @param base The current transform of the graphics.
+     * @param scratch A transform that can be overwritten while drawing.
+     */
+    static void drawSprite(Graphics2D graphics, PixelBuffer pixels, AffineTransform base, AffineTransform scratch, Texture texture, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, float rotation, float pivotX, float pivotY, MirrorMode mirror, InterpolationMode interpolationMode) {
+        // Convert the source coordinates from the texture's region into its image:
+        sx1 += texture.x;
+        sy1 += texture.y;
+        sx2 += texture.x;
+        sy2 += texture.y;
+
+        // Unrotated and unscaled sprites can be copied straight into the render target's pixels, bypassing Java2D:
+        int width = sx2 - sx1;
+        int height = sy2 - sy1;
+        if (pixels != null && rotation == 0 && isIntegerTranslation(base) && dx2 - dx1 == width && dy2 - dy1 == height && width > 0 && height > 0
+            && sx1 >= 0 && sy1 >= 0 && sx2 <= texture.getImageWidth() && sy2 <= texture.getImageHeight() && texture.getPixels() != null) {
+            // Mirroring happens around the integer center of the destination, which shifts odd sizes by a pixel:
+            boolean mirrorX = (mirror == MirrorMode.HORIZONTAL || mirror == MirrorMode.BOTH);
+            boolean mirrorY = (mirror == MirrorMode.VERTICAL || mirror == MirrorMode.BOTH);
+            int x = dx1 + (int)base.getTranslateX();
+            int y = dy1 + (int)base.getTranslateY();
+            pixels.blit(texture, sx1, sy1, width, height, mirrorX ? x - (width & 1) : x, mirrorY ? y - (height & 1) : y, mirrorX, mirrorY);
+            return;
+        }
+
+        // Most sprites are neither rotated nor mirrored, so they don't need a transform at all:
+        setInterpolationMode(graphics, interpolationMode);
+        if (rotation == 0 && mirror == MirrorMode.NONE) {
+            graphics.drawImage(texture.image, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, null);
+            return;
         }
-        
-        // Set the interpolation mode:
-        bufferGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, 
-            (interpolationMode == InterpolationMode.LINEAR) ? RenderingHints.VALUE_INTERPOLATION_BILINEAR : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
 
         // Start building the transform relative to the draw position:
-        AffineTransform transform = new AffineTransform();
-        transform.translate(dx1, dy1);
+        scratch.setTransform(base);
+        scratch.translate(dx1, dy1);
 
         // Rotate around the pivot:
-        transform.translate(pivot.x, pivot.y);
-        transform.rotate(Math.toRadians(rotation));
-        transform.translate(-pivot.x, -pivot.y);
+        if (rotation != 0) {
+            scratch.translate(pivotX, pivotY);
+            scratch.rotate(Math.toRadians(rotation));
+            scratch.translate(-pivotX, -pivotY);
+        }
 
         // Mirror around the center, regardless of the pivot:
         if (mirror != MirrorMode.NONE) {
-            transform.translate(center.x, center.y);
-            if (mirror == MirrorMode.HORIZONTAL || mirror == MirrorMode.BOTH) {
-                transform.scale(-1, 1);
-            }
-            if (mirror == MirrorMode.VERTICAL || mirror == MirrorMode.BOTH) {
-                transform.scale(1, -1);
-            }
-            transform.translate(-center.x, -center.y);
+            int centerX = (dx2 - dx1) / 2;
+            int centerY = (dy2 - dy1) / 2;
+            scratch.translate(centerX, centerY);
+            scratch.scale((mirror == MirrorMode.HORIZONTAL || mirror == MirrorMode.BOTH) ? -1 : 1, (mirror == MirrorMode.VERTICAL || mirror == MirrorMode.BOTH) ? -1 : 1);
+            scratch.translate(-centerX, -centerY);
         }
 
         // Finish building the transform:
-        transform.translate(-dx1, -dy1);
+        scratch.translate(-dx1, -dy1);
 
         // Draw the image:
-        AffineTransform oldTransform = bufferGraphics.getTransform();
-        bufferGraphics.setTransform(transform);
-        bufferGraphics.drawImage(texture.image, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, null);
-        bufferGraphics.setTransform(oldTransform);
+        graphics.setTransform(scratch);
+        graphics.drawImage(texture.image, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, null);
+        graphics.setTransform(base);
+        renderCounters.transformChanges.add(2);
+    }
+
+    /**
+     * Starts batching texture draws. Until endBatch() is called, drawTexture() records draws instead of drawing them
+     * immediately, and they are then drawn sorted by layer (see setDrawLayer()), texture and interpolation mode to
+     * avoid expensive graphics state changes. Within a layer, overlapping textures are not guaranteed to be drawn in
+     * the order they were submitted, and other kinds of drawing are not batched. Batches are ended automatically at
+     * the end of each frame.
+     */
+    public static void beginBatch() {
+        spriteBatch.active = true;
+    }
+
+    /**
+     * Draws all of the textures recorded since beginBatch() and stops batching.
+     */
+    public static void endBatch() {
+        spriteBatch.active = false;
+        spriteBatch.flush();
+    }
+
+    /**
+     * Sets the layer that batched texture draws are sorted into. Lower layers are drawn first.
+     * @param layer The layer, between -32768 and 32767. The default is 0.
+     */
+    public static void setDrawLayer(int layer) {
+        spriteBatch.layer = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, layer));
     }
 
     /**
@@ -395,38 +1379,133 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
      * @param bounds The bounds that the texture should be resized to.
      */
     public static void drawResizableTexture(ResizableTexture texture, Bounds2 bounds) {
+        int px = (int)bounds.position.x;
+        int py = (int)bounds.position.y;
+        
+        // Don't let the overall size be so small that segment 9 has a negative size in either dimension:
+        int sx = Math.max((int)bounds.size.x, texture.width - texture.rightOffset + texture.leftOffset);
+        int sy = Math.max((int)bounds.size.y, texture.height - texture.bottomOffset + texture.topOffset);
+
+        if (!isVisible(px - 2, py - 2, px + sx + 2, py + sy + 2)) {
+            renderCounters.culledDraws++;
+            return;
+        }
+        renderCounters.resizableTextureDraws++;
+        countPixels(px, py, px + sx, py + sy);
+
+        // Draw a pre-drawn copy if the texture is drawn at this size every frame:
+        Texture cached = isIntegerTranslation(bufferTransform) ? resizableTextureCache.get(texture, sx, sy, frameNumber) : null;
+        if (cached != null) {
+            submitSprite(cached, px, py, px + sx, py + sy, 0, 0, sx, sy, 0, 0, 0, MirrorMode.NONE, InterpolationMode.NEAREST);
+        } else if (tiledRenderer.active) {
+            record(px - 2, py - 2, px + sx + 2, py + sy + 2,
+                (graphics, pixels, base, scratch) -> drawResizableTexture(graphics, texture, px, py, sx, sy));
+        } else {
+            drawResizableTexture(bufferGraphics, texture, px, py, sx, sy);
+        }
+    }
+
+    static void drawResizableTexture(Graphics2D graphics, ResizableTexture texture, int px, int py, int sx, int sy) {
         int bxmin = texture.leftOffset;
         int bxmax = texture.rightOffset;
         int bymin = texture.topOffset;
         int bymax = texture.bottomOffset;
         int txmax = texture.width;
         int tymax = texture.height;
-        int px = (int)bounds.position.x;
-        int py = (int)bounds.position.y;
-        
-        // Don't let the overall size be so small that segment 9 has a negative size in either dimension:
-        int sx = Math.max((int)bounds.size.x, txmax - bxmax + bxmin);
-        int sy = Math.max((int)bounds.size.y, tymax - bymax + bymin);
 
         // Draw each of the nine segments:
-        bufferGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        drawResizableTextureSegment(texture, 0, 0, bxmin, bymin, px, py, bxmin, bymin);
-        drawResizableTextureSegment(texture, bxmax, 0, txmax - bxmax, bymin, px + sx - (txmax - bxmax), py, txmax - bxmax, bymin);
-        drawResizableTextureSegment(texture, 0, bymax, bxmin, tymax - bymax, px, py + sy - (tymax - bymax), bxmin, tymax - bymax);
-        drawResizableTextureSegment(texture, bxmax, bymax, txmax - bxmax, tymax - bymax, px + sx - (txmax - bxmax), py + sy - (tymax - bymax), txmax - bxmax, tymax - bymax);
-        drawResizableTextureSegment(texture, bxmin, 0, bxmax - bxmin, bymin, px + bxmin, py, sx - bxmin - (txmax - bxmax), bymin);
-        drawResizableTextureSegment(texture, 0, bymin, bxmin, bymax - bymin, px, py + bymin, bxmin, sy - bymin - (tymax - bymax));
-        drawResizableTextureSegment(texture, bxmax, bymin, txmax - bxmax, bymax - bymin, px + sx - (txmax - bxmax), py + bymin, txmax - bxmax, sy - bymin - (tymax - bymax));
-        drawResizableTextureSegment(texture, bxmin, bymax, bxmax - bxmin, tymax - bymax, px + bxmin, py + sy - (tymax - bymax), sx - bxmin - (txmax - bxmax), tymax - bymax);
-        drawResizableTextureSegment(texture, bxmin, bymin, bxmax - bxmin, bymax - bymin, px + bxmin, py + bymin, sx - bxmin - (txmax - bxmax), sy - bymin - (tymax - bymax));
-    }
-
-    private static void drawResizableTextureSegment(ResizableTexture texture, int subtextureX, int subtextureY, int subtextureW, int subtextureH, int destX, int destY, int destW, int destH) {
+        setInterpolationMode(graphics, InterpolationMode.LINEAR);
+        drawResizableTextureSegment(graphics, texture, 0, 0, bxmin, bymin, px, py, bxmin, bymin);
+        drawResizableTextureSegment(graphics, texture, bxmax, 0, txmax - bxmax, bymin, px + sx - (txmax - bxmax), py, txmax - bxmax, bymin);
+        drawResizableTextureSegment(graphics, texture, 0, bymax, bxmin, tymax - bymax, px, py + sy - (tymax - bymax), bxmin, tymax - bymax);
+        drawResizableTextureSegment(graphics, texture, bxmax, bymax, txmax - bxmax, tymax - bymax, px + sx - (txmax - bxmax), py + sy - (tymax - bymax), txmax - bxmax, tymax - bymax);
+        drawResizableTextureSegment(graphics, texture, bxmin, 0, bxmax - bxmin, bymin, px + bxmin, py, sx - bxmin - (txmax - bxmax), bymin);
+        drawResizableTextureSegment(graphics, texture, 0, bymin, bxmin, bymax - bymin, px, py + bymin, bxmin, sy - bymin - (tymax - bymax));
+        drawResizableTextureSegment(graphics, texture, bxmax, bymin, txmax - bxmax, bymax - bymin, px + sx - (txmax - bxmax), py + bymin, txmax - bxmax, sy - bymin - (tymax - bymax));
+        drawResizableTextureSegment(graphics, texture, bxmin, bymax, bxmax - bxmin, tymax - bymax, px + bxmin, py + sy - (tymax - bymax), sx - bxmin - (txmax - bxmax), tymax - bymax);
+        drawResizableTextureSegment(graphics, texture, bxmin, bymin, bxmax - bxmin, bymax - bymin, px + bxmin, py + bymin, sx - bxmin - (txmax - bxmax), sy - bymin - (tymax - bymax));
+    }
+
+    private static void drawResizableTextureSegment(Graphics2D graphics, ResizableTexture texture, int subtextureX, int subtextureY, int subtextureW, int subtextureH, int destX, int destY, int destW, int destH) {
         if (subtextureW > 0 && subtextureH > 0) {
-            bufferGraphics.drawImage(texture.image, destX, destY, destX + destW, destY + destH, subtextureX, subtextureY, subtextureX + subtextureW, subtextureY + subtextureH, null);
+            graphics.drawImage(texture.image, destX, destY, destX + destW, destY + destH, subtextureX, subtextureY, subtextureX + subtextureW, subtextureY + subtextureH, null);
+        }
+    }
+
+    /**
+     * Draws the visible part of a tile map.
+     * @param map The tile map to draw.
+     * @param position The position of the top left corner of the map.
+     */
+    public static void drawTileMap(TileMap map, Vector2 position) {
+        updateCamera();
+        map.draw((int)position.x, (int)position.y, (int)Math.floor(viewX1), (int)Math.floor(viewY1), (int)Math.ceil(viewX2), (int)Math.ceil(viewY2));
+    }
+
+    /**
+     * Draws all of the particles in a particle system.
+     * @param particles The particle system to draw.
+     */
+    public static void drawParticles(ParticleSystem particles) {
+        if (particles.getCount() == 0) {
+            return;
+        }
+        int extent = particles.getExtent();
+        float x1 = particles.minX - extent, y1 = particles.minY - extent, x2 = particles.maxX + extent, y2 = particles.maxY + extent;
+        if (!isVisible(x1, y1, x2, y2)) {
+            renderCounters.culledDraws += particles.getCount();
+            return;
+        }
+        renderCounters.particleDraws += particles.getCount();
+        particles.countPixels(renderCounters, bufferTransform, bufferImage.getWidth(), bufferImage.getHeight(), renderTarget == null);
+
+        // Recorded draws copy the particles, like the bulk draws copy their arrays, so that the tiles draw them as they
+        // are now rather than after any later updates this frame:
+        ParticleSystem recorded = tiledRenderer.active ? particles.copyForDrawing() : null;
+
+        // Write the particles straight into the render target's pixels unless the camera is scaling or rotating them,
+        // or their texture's pixels can't be read directly:
+        if (isIntegerTranslation(bufferTransform) && (particles.texture == null || particles.texture.getPixels() != null)) {
+            int offsetX = (int)bufferTransform.getTranslateX();
+            int offsetY = (int)bufferTransform.getTranslateY();
+            if (tiledRenderer.active) {
+                record(x1, y1, x2, y2, (graphics, pixels, base, scratch) -> recorded.draw(pixels, offsetX, offsetY));
+            } else {
+                particles.draw(bufferPixels, offsetX, offsetY);
+            }
+        } else if (tiledRenderer.active) {
+            record(x1, y1, x2, y2, (graphics, pixels, base, scratch) -> recorded.draw(graphics));
+        } else {
+            particles.draw(bufferGraphics);
+        }
+    }
+
+    /**
+     * Draws a chunk of a tile map, as part of drawTileMap().
+     */
+    static void drawChunk(Texture chunk, int x, int y) {
+        int x2 = x + chunk.width;
+        int y2 = y + chunk.height;
+        renderCounters.textureDraws++;
+        countPixels(x, y, x2, y2);
+        if (spriteBatch.active) {
+            spriteBatch.add(chunk, x, y, x2, y2, 0, 0, chunk.width, chunk.height, 0, 0, 0, MirrorMode.NONE, InterpolationMode.NEAREST);
+        } else {
+            submitSprite(chunk, x, y, x2, y2, 0, 0, chunk.width, chunk.height, 0, 0, 0, MirrorMode.NONE, InterpolationMode.NEAREST);
         }
     }
 
+    /**
+     * Sets how much memory can be used to keep resizable textures pre-drawn at the sizes they are drawn at. Resizable
+     * textures that are drawn at the same size on more than one frame are then drawn with a single copy instead of
+     * being scaled in nine pieces. Textures whose size changes every frame are never cached.
+     * @param pixels The total number of pixels that pre-drawn textures may use. The default is 1048576 (4 MB).
+     *               If zero, resizable textures are never cached.
+     */
+    public static void setResizableTextureCacheSize(int pixels) {
+        resizableTextureCache.setMaxPixels(pixels);
+    }
+
     // ======================================================================================
     // Text drawing
     // ======================================================================================
@@ -456,9 +1535,8 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
      */
     public static Bounds2 drawString(String text, Vector2 position, Color color, Font font, TextAlignment alignment, float rotation, boolean measureOnly) {
         // Query the text dimensions:
-        bufferGraphics.setFont(font.font);
-        FontMetrics metrics = bufferGraphics.getFontMetrics();
-        int width = metrics.stringWidth(text);
+        FontMetrics metrics = font.getMetrics();
+        int width = font.getStringWidth(text);
         int height = metrics.getHeight();
         int descent = metrics.getDescent();
 
@@ -472,13 +1550,48 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
 
         // If we're not only measuring the text, draw it:
         if (!measureOnly) {
-            bufferGraphics.setColor(color.color);
+            float x = drawPosition.x;
+            float y = drawPosition.y;
+
+            // Leave room for glyphs that overhang their advance (e.g. italics), and for rotation about the position:
+            float x1 = x - height, y1 = y - height * 2, x2 = x + width + height, y2 = y + height;
             if (rotation != 0) {
-                bufferGraphics.rotate(Math.toRadians(rotation), position.x, position.y);
+                float radius = (float)Math.hypot(Math.max(Math.abs(x1 - position.x), Math.abs(x2 - position.x)), Math.max(Math.abs(y1 - position.y), Math.abs(y2 - position.y)));
+                x1 = position.x - radius;
+                y1 = position.y - radius;
+                x2 = position.x + radius;
+                y2 = position.y + radius;
             }
-            bufferGraphics.drawString(text, drawPosition.x, drawPosition.y);
-            if (rotation != 0) {
-                bufferGraphics.rotate(Math.toRadians(-rotation), position.x, position.y);
+            boolean visible = isVisible(x1, y1, x2, y2);
+            if (visible) {
+                renderCounters.stringDraws++;
+                if (rotation == 0) {
+                    countPixels(x, y + descent - height, x + width, y + descent);
+                } else {
+                    countPixels(x1, y1, x2, y2);
+                }
+            }
+            if (!visible) {
+                // The text is entirely outside of the view.
+                renderCounters.culledDraws++;
+            } else if (cachedTextRendering && rotation == 0 && isIntegerTranslation(bufferTransform) && font.getGlyphs().canDraw(text)) {
+                // Blend the cached glyphs straight into the render target:
+                GlyphCache glyphs = font.getGlyphs();
+                glyphs.prepare(text);
+                int[] colors = glyphs.getColorTable(color.color.getRGB());
+                int gx = Math.round(x + (float)bufferTransform.getTranslateX());
+                int gy = Math.round(y + (float)bufferTransform.getTranslateY());
+                if (tiledRenderer.active) {
+                    record(x1, y1, x2, y2, (graphics, pixels, base, scratch) -> glyphs.draw(pixels, text, gx, gy, colors));
+                } else {
+                    glyphs.draw(bufferPixels, text, gx, gy, colors);
+                }
+            } else if (tiledRenderer.active) {
+                java.awt.Font awtFont = font.font;
+                java.awt.Color awtColor = color.color;
+                record(x1, y1, x2, y2, (graphics, pixels, base, scratch) -> drawString(graphics, base, text, awtFont, awtColor, x, y, rotation, position.x, position.y));
+            } else {
+                drawString(bufferGraphics, bufferTransform, text, font.font, color.color, x, y, rotation, position.x, position.y);
             }
         }
 
@@ -486,6 +1599,314 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
         return new Bounds2(drawPosition.add(new Vector2(0, descent - height)), new Vector2(width, height));
     }
 
+    private static void drawString(Graphics2D graphics, AffineTransform base, String text, java.awt.Font font, java.awt.Color color, float x, float y, float rotation, float pivotX, float pivotY) {
+        graphics.setFont(font);
+        graphics.setColor(color);
+        if (rotation != 0) {
+            graphics.rotate(Math.toRadians(rotation), pivotX, pivotY);
+        }
+        graphics.drawString(text, x, y);
+        if (rotation != 0) {
+            graphics.setTransform(base);
+            renderCounters.transformChanges.add(2);
+        }
+    }
+
+    /**
+     * Enables cached text rendering. Instead of drawing text with Java2D's text pipeline, each font's glyphs are
+     * rasterized once and then blended straight into the render target, which is much faster for text that is drawn
+     * every frame. Text drawn this way may look very slightly different. Rotated text, text drawn with a zoomed or
+     * rotated camera, and scripts that need complex layout are still drawn with Java2D.
+     * @param enabled Whether or not cached text rendering should be used.
+     */
+    public static void setCachedTextRendering(boolean enabled) {
+        cachedTextRendering = enabled;
+    }
+
+    // ======================================================================================
+    // Tiled rendering
+    // ======================================================================================
+
+    /**
+     * Enables tiled rendering, starting next frame. Instead of drawing immediately, all drawing is recorded during the
+     * frame and then drawn at the end of it by splitting the screen into tiles and drawing each tile on a separate
+     * thread. The result is the same as drawing normally, but it makes use of every CPU core, which is faster for games
+     * that draw a lot at high resolutions.
+     * @param enabled Whether or not tiled rendering should be used.
+     */
+    public static void setTiledRendering(boolean enabled) {
+        tiledRendering = enabled;
+    }
+
+    /**
+     * Records a draw call for tiled rendering.
+     * @param x1 The left edge of the area the command may draw into, in world coordinates.
+     * @param y1 The top edge of the area the command may draw into, in world coordinates.
+     * @param x2 The right edge of the area the command may draw into, in world coordinates.
+     * @param y2 The bottom edge of the area the command may draw into, in world coordinates.
+     * @param command The command.
+     */
+    private static void record(float x1, float y1, float x2, float y2, TiledRenderer.Command command) {
+        if (isIntegerTranslation(bufferTransform)) {
+            float tx = (float)bufferTransform.getTranslateX();
+            float ty = (float)bufferTransform.getTranslateY();
+            tiledRenderer.add(x1 + tx, y1 + ty, x2 + tx, y2 + ty, bufferTransform, command);
+        } else {
+            // Find the bounds of the transformed corners:
+            double[] corners = { x1, y1, x2, y1, x1, y2, x2, y2 };
+            bufferTransform.transform(corners, 0, corners, 0, 4);
+            tiledRenderer.add(
+                (float)Math.min(Math.min(corners[0], corners[2]), Math.min(corners[4], corners[6])),
+                (float)Math.min(Math.min(corners[1], corners[3]), Math.min(corners[5], corners[7])),
+                (float)Math.max(Math.max(corners[0], corners[2]), Math.max(corners[4], corners[6])),
+                (float)Math.max(Math.max(corners[1], corners[3]), Math.max(corners[5], corners[7])),
+                bufferTransform, command);
+        }
+    }
+
+    // ======================================================================================
+    // Render targets
+    // ======================================================================================
+
+    /**
+     * Sets the render target that all drawing goes into, until it is set back to null. The render target is reset to
+     * the screen at the end of every frame.
+     * The camera (if there is one) also applies to render targets, centered on the middle of the render target, so set
+     * it to null first to draw into a render target in its own pixel coordinates.
+     * @param target The render target to draw into, or null to draw to the screen.
+     */
+    public static void setRenderTarget(RenderTarget target) {
+        if (target == renderTarget) {
+            return;
+        }
+
+        // Finish drawing everything that was waiting to be drawn into the old render target:
+        spriteBatch.flush();
+        tiledRenderer.render(bufferImage, bufferPixels);
+
+        renderTarget = target;
+        if (target != null) {
+            // Anything that was pre-drawn from the render target's old contents needs to be drawn again:
+            target.version++;
+            bufferImage = (BufferedImage)target.image;
+            bufferGraphics = target.graphics;
+            bufferPixels = target.pixels;
+        } else {
+            bufferImage = screenImage;
+            bufferGraphics = screenGraphics;
+            bufferPixels = screenPixels;
+        }
+
+        // Only the screen is drawn with tiled rendering, since render targets are usually drawn into rarely:
+        tiledRenderer.active = tiledFrame && target == null;
+        applyCamera();
+    }
+
+    /**
+     * @return The render target that is currently being drawn into, or null if drawing goes to the screen.
+     */
+    public static RenderTarget getRenderTarget() {
+        return renderTarget;
+    }
+
+    /**
+     * Replaces every pixel of the current render target (or the screen) with a color.
+     * @param color The color to clear to, which can be transparent (e.g. to reuse a render target for a new layer).
+     */
+    public static void clearRenderTarget(Color color) {
+        spriteBatch.flush();
+        int argb = color.getARGB();
+        if (tiledRenderer.active) {
+            tiledRenderer.add(0, 0, bufferImage.getWidth(), bufferImage.getHeight(), bufferTransform, (graphics, pixels, base, scratch) -> pixels.fill(argb));
+        } else {
+            bufferPixels.fill(argb);
+        }
+    }
+
+    /**
+     * Applies a full-screen effect (such as a color grade or a blur) to the screen at the end of this frame, after
+     * everything else has been drawn. Effects are applied in the order they were added, and are split between every
+     * CPU core. Like drawing, effects only last for a single frame, so they have to be applied again every frame.
+     * @param effect The effect, e.g. one of the built-in effects from PostEffects.
+     */
+    public static void applyPostEffect(PostEffect effect) {
+        postProcessor.add(effect);
+    }
+
+    // ======================================================================================
+    // Frame capture
+    // ======================================================================================
+
+    /**
+     * Starts recording finished frames (including post-processing effects) to disk, stopping any recording that is
+     * already running. Frames are written by a background thread, so recording never slows the game down. If the
+     * background thread can't keep up, frames are skipped instead (see getDroppedFrameCount()).
+     * @param path The directory to write a PNG sequence into, or the file to write a GIF to.
+     * @param format The format to write.
+     * @param frameInterval The number of frames between recorded frames, e.g. 1 to record every frame or 3 to record
+     *                      a 60 frames per second game at 20 frames per second (which suits GIFs better).
+     */
+    public static void startCapture(String path, CaptureFormat format, int frameInterval) {
+        frameRecorder.start(path, format, frameInterval, bufferWidth, bufferHeight);
+    }
+
+    /**
+     * Stops recording frames. Frames that were already recorded are still written in the background, and are finished
+     * before the game exits, even if it exits while recording. If writing an earlier frame failed, an Error is thrown
+     * (as it is at the next recorded frame while recording).
+     */
+    public static void stopCapture() {
+        frameRecorder.stop();
+    }
+
+    /**
+     * @return Whether or not frames are being recorded.
+     */
+    public static boolean isCapturing() {
+        return frameRecorder.isCapturing();
+    }
+
+    /**
+     * @return The number of frames recorded since recording started.
+     */
+    public static int getCapturedFrameCount() {
+        return frameRecorder.getCapturedFrames();
+    }
+
+    /**
+     * @return The number of frames that were skipped since recording started, because the frames before them were
+     *         still waiting to be written.
+     */
+    public static int getDroppedFrameCount() {
+        return frameRecorder.getDroppedFrames();
+    }
+
+    // ======================================================================================
+    // Camera
+    // ======================================================================================
+
+    /**
+     * Sets the camera to draw with. While a camera is set, all drawing is done in world coordinates and the camera
+     * decides which part of the world is shown. Anything drawn entirely outside of the view is skipped cheaply, so
+     * there's no need to cull off-screen objects by hand.
+     * The camera can be changed (e.g. to draw the world and then a HUD with no camera) at any point during a frame,
+     * which draws any sprites that are waiting in a batch first.
+     * @param camera The camera to draw with, or null to draw in screen coordinates.
+     */
+    public static void setCamera(Camera camera) {
+        Engine.camera = camera;
+        applyCamera();
+    }
+
+    /**
+     * @return The camera that is currently being drawn with, or null if there isn't one.
+     */
+    public static Camera getCamera() {
+        return camera;
+    }
+
+    /**
+     * Converts a position on the screen (such as the mouse position) into world coordinates for the current camera.
+     * @param position The position on the screen.
+     * @return The position in the world.
+     */
+    public static Vector2 screenToWorld(Vector2 position) {
+        updateCamera();
+        double[] point = { position.x, position.y };
+        try {
+            bufferTransform.inverseTransform(point, 0, point, 0, 1);
+        } catch (NoninvertibleTransformException e) {
+            throw new Error(e);
+        }
+        return new Vector2((float)point[0], (float)point[1]);
+    }
+
+    /**
+     * Converts a position in the world into a position on the screen for the current camera.
+     * @param position The position in the world.
+     * @return The position on the screen.
+     */
+    public static Vector2 worldToScreen(Vector2 position) {
+        updateCamera();
+        double[] point = { position.x, position.y };
+        bufferTransform.transform(point, 0, point, 0, 1);
+        return new Vector2((float)point[0], (float)point[1]);
+    }
+
+    /**
+     * Applies the camera again if it changed since it was last applied.
+     */
+    private static void updateCamera() {
+        if (camera != null && camera.dirty) {
+            applyCamera();
+        }
+    }
+
+    /**
+     * Rebuilds the render target's transform and the visible part of the world from the camera.
+     */
+    private static void applyCamera() {
+        // Batched sprites have to be drawn with the camera they were submitted with:
+        spriteBatch.flush();
+
+        // The camera is centered on whichever render target is being drawn into:
+        int width = (bufferImage != null) ? bufferImage.getWidth() : bufferWidth;
+        int height = (bufferImage != null) ? bufferImage.getHeight() : bufferHeight;
+
+        // The transform is replaced instead of changed, because recorded draw calls keep references to it:
+        AffineTransform transform = new AffineTransform();
+        if (camera != null) {
+            Vector2 position = camera.getPosition();
+            float zoom = camera.getZoom();
+            float rotation = camera.getRotation();
+            if (zoom == 1 && rotation == 0) {
+                // Keep textures sharp (and on the fast path) by moving only in whole pixels:
+                transform.translate(Math.round(width / 2f - position.x), Math.round(height / 2f - position.y));
+            } else {
+                transform.translate(width / 2.0, height / 2.0);
+                transform.scale(zoom, zoom);
+                transform.rotate(Math.toRadians(-rotation));
+                transform.translate(-position.x, -position.y);
+            }
+            camera.dirty = false;
+        }
+        bufferTransform = transform;
+        if (bufferGraphics != null) {
+            bufferGraphics.setTransform(transform);
+            renderCounters.transformChanges.increment();
+        }
+
+        // Find the bounds of the part of the world that covers the screen:
+        double[] corners = { 0, 0, width, 0, 0, height, width, height };
+        try {
+            transform.inverseTransform(corners, 0, corners, 0, 4);
+        } catch (NoninvertibleTransformException e) {
+            throw new Error(e);
+        }
+        viewX1 = (float)Math.min(Math.min(corners[0], corners[2]), Math.min(corners[4], corners[6]));
+        viewY1 = (float)Math.min(Math.min(corners[1], corners[3]), Math.min(corners[5], corners[7]));
+        viewX2 = (float)Math.max(Math.max(corners[0], corners[2]), Math.max(corners[4], corners[6]));
+        viewY2 = (float)Math.max(Math.max(corners[1], corners[3]), Math.max(corners[5], corners[7]));
+    }
+
+    /**
+     * @return Whether or not any part of an area (in world coordinates) could be visible.
+     */
+    private static boolean isVisible(float x1, float y1, float x2, float y2) {
+        updateCamera();
+        return x2 > viewX1 && x1 < viewX2 && y2 > viewY1 && y1 < viewY2;
+    }
+
+    /**
+     * @return Whether or not a transform only moves things by whole pixels.
+     */
+    static boolean isIntegerTranslation(AffineTransform transform) {
+        return (transform.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0
+            && transform.getTranslateX() == Math.rint(transform.getTranslateX())
+            && transform.getTranslateY() == Math.rint(transform.getTranslateY());
+    }
+
+
     // ======================================================================================
     // Keyboard and mouse input
     // ======================================================================================
@@ -510,6 +1931,7 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
         MOUSE_DOWN,
         MOUSE_UP,
         MOUSE_MOVE,
+        MOUSE_POSITION,
         MOUSE_SCROLL,
     }
 
@@ -567,6 +1989,79 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
         }
     }
     
+    /**
+     * Simulates a key being pressed, as if it had been pressed on the keyboard. It will be reported starting next frame.
+     * @param key The key to press.
+     */
+    public static void postKeyDown(Key key) {
+        synchronized (inputEvents) {
+            inputEvents.add(instance.new InputEvent(InputEventType.KEY_DOWN, key.getValue(), 0, 0));
+        }
+    }
+
+    /**
+     * Simulates a key being released, as if it had been released on the keyboard. It will be reported starting next frame.
+     * @param key The key to release.
+     */
+    public static void postKeyUp(Key key) {
+        synchronized (inputEvents) {
+            inputEvents.add(instance.new InputEvent(InputEventType.KEY_UP, key.getValue(), 0, 0));
+        }
+    }
+
+    /**
+     * Simulates text being typed on the keyboard. It will be reported starting next frame.
+     * @param text The text to type.
+     */
+    public static void postTypedText(String text) {
+        synchronized (inputEvents) {
+            for (int i = 0; i < text.length(); i++) {
+                inputEvents.add(instance.new InputEvent(InputEventType.KEY_TYPED, text.charAt(i), 0, 0));
+            }
+        }
+    }
+
+    /**
+     * Simulates the mouse cursor being moved. It will be reported starting next frame.
+     * @param position The new position of the mouse cursor (in pixels).
+     */
+    public static void postMouseMove(Vector2 position) {
+        // Unlike real mouse events, which are in window coordinates, the position is already in buffer coordinates:
+        synchronized (inputEvents) {
+            inputEvents.add(instance.new InputEvent(InputEventType.MOUSE_POSITION, 0, (int)position.x, (int)position.y));
+        }
+    }
+
+    /**
+     * Simulates a mouse button being pressed. It will be reported starting next frame.
+     * @param button The mouse button to press.
+     */
+    public static void postMouseButtonDown(MouseButton button) {
+        synchronized (inputEvents) {
+            inputEvents.add(instance.new InputEvent(InputEventType.MOUSE_DOWN, button.getValue(), 0, 0));
+        }
+    }
+
+    /**
+     * Simulates a mouse button being released. It will be reported starting next frame.
+     * @param button The mouse button to release.
+     */
+    public static void postMouseButtonUp(MouseButton button) {
+        synchronized (inputEvents) {
+            inputEvents.add(instance.new InputEvent(InputEventType.MOUSE_UP, button.getValue(), 0, 0));
+        }
+    }
+
+    /**
+     * Simulates the mouse wheel being scrolled. It will be reported starting next frame.
+     * @param amount The amount to scroll (in scroll units).
+     */
+    public static void postMouseScroll(int amount) {
+        synchronized (inputEvents) {
+            inputEvents.add(instance.new InputEvent(InputEventType.MOUSE_SCROLL, 0, 0, amount));
+        }
+    }
+    
     public static float clamp(float x, float min, float max) {
         return Math.max(min, Math.min(max, x));
     }
@@ -614,6 +2109,11 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
                             (int)remapLerpClamped(event.x, scaledBufferPos.x, scaledBufferPos.x + scaledBufferSize.x, 0, bufferWidth),
                             (int)remapLerpClamped(event.y, scaledBufferPos.y, scaledBufferPos.y + scaledBufferSize.y, 0, bufferHeight));
                         break;
+                    case MOUSE_POSITION:
+                        mousePosition = new Vector2(
+                            Math.max(0, Math.min(bufferWidth, event.x)),
+                            Math.max(0, Math.min(bufferHeight, event.y)));
+                        break;
                     case MOUSE_SCROLL:
                         mouseScroll += event.y;
                         break;
@@ -703,9 +2203,20 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
      * @return An instance handle that can be passed to stopSound() to stop playback of the sound.
      */
     public static SoundInstance playSound(Sound sound, boolean repeat) {
+        // There may not be an audio device to play sounds on when running headless:
+        if (headless) {
+            return new SoundInstance(null);
+        }
+
         try {
             Clip clip = AudioSystem.getClip();
-            clip.open(AudioSystem.getAudioInputStream(sound.file));
+            if (sound.file != null) {
+                clip.open(AudioSystem.getAudioInputStream(sound.file));
+            } else {
+                // Sounds from the asset archive are already decoded:
+                byte[] samples = sound.getSampleArray();
+                clip.open(sound.format, samples, 0, samples.length);
+            }
             clip.start();
             if (repeat) {
                 clip.loop(Clip.LOOP_CONTINUOUSLY);
@@ -721,7 +2232,9 @@ public final class Engine implements KeyListener, MouseListener, MouseMotionList
      * @param instance An instance handle from a prior call to playSound().
      */
     public static void stopSound(SoundInstance instance) {
-        instance.clip.stop();
+        if (instance.clip != null) {
+            instance.clip.stop();
+        }
     }
 
 }
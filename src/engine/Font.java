@@ -1,11 +1,76 @@
 package engine;
 
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class Font {
-    
-    protected final java.awt.Font font;
-    
+
+    // Text is measured with the same hints as the render target, but never with the camera's transform:
+    private static final Graphics2D measureGraphics = createMeasureGraphics();
+
+    // The number of strings whose widths are remembered for each font:
+    private static final int MAX_CACHED_WIDTHS = 512;
+
+    protected java.awt.Font font;
+
+    private FontMetrics metrics;
+    private GlyphCache glyphs;
+
+    // The widths of recently measured strings, with the least recently used first:
+    private final LinkedHashMap<String, Integer> widths = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_CACHED_WIDTHS;
+        }
+    };
+
     public Font(java.awt.Font font) {
         this.font = font;
     }
 
+    private static Graphics2D createMeasureGraphics() {
+        Graphics2D graphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB_PRE).createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        return graphics;
+    }
+
+    FontMetrics getMetrics() {
+        if (metrics == null) {
+            metrics = measureGraphics.getFontMetrics(font);
+        }
+        return metrics;
+    }
+
+    /**
+     * @return The width of the text (in pixels), remembering it in case the same text is measured again soon.
+     */
+    int getStringWidth(String text) {
+        Integer width = widths.get(text);
+        if (width == null) {
+            width = getMetrics().stringWidth(text);
+            widths.put(text, width);
+        }
+        return width;
+    }
+
+    GlyphCache getGlyphs() {
+        if (glyphs == null) {
+            glyphs = new GlyphCache(font, getMetrics());
+        }
+        return glyphs;
+    }
+
+    /**
+     * Replaces the font (e.g. when its file has been changed), forgetting everything measured or drawn with the old one.
+     */
+    void replaceFont(java.awt.Font font) {
+        this.font = font;
+        metrics = null;
+        glyphs = null;
+        widths.clear();
+    }
+
 }
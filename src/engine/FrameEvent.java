@@ -0,0 +1,39 @@
+package engine;
+
+import jdk.jfr.*;
+
+/**
+ * A Flight Recorder event describing where the time went in a single frame. Start a recording (e.g. with
+ * -XX:StartFlightRecording) to capture these alongside the JVM's own events.
+ */
+@Name("engine.Frame")
+@Label("Frame")
+@Category("Game Engine")
+@StackTrace(false)
+final class FrameEvent extends Event {
+
+    @Label("Poll Events") @Timespan(Timespan.NANOSECONDS)
+    long pollEvents;
+
+    @Label("Clear") @Timespan(Timespan.NANOSECONDS)
+    long clear;
+
+    @Label("Fixed Update") @Timespan(Timespan.NANOSECONDS)
+    long fixedUpdate;
+
+    @Label("Update") @Timespan(Timespan.NANOSECONDS)
+    long update;
+
+    @Label("Render") @Timespan(Timespan.NANOSECONDS)
+    long render;
+
+    @Label("Blit") @Timespan(Timespan.NANOSECONDS)
+    long blit;
+
+    @Label("Repaint") @Timespan(Timespan.NANOSECONDS)
+    long repaint;
+
+    @Label("Wait") @Timespan(Timespan.NANOSECONDS)
+    long waitTime;
+
+}
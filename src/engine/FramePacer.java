@@ -0,0 +1,149 @@
+package engine;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps track of frame timing for the game loop: measures the time between frames, accumulates time for
+ * fixed-rate updates, and waits until the next frame should start.
+ */
+final class FramePacer {
+
+    // Parking the thread is only accurate to a millisecond or so on most platforms, so we stop parking this far
+    // ahead of the deadline and spin for the remainder of the wait:
+    private static final long SPIN_THRESHOLD_NANOS = 1500000;
+
+    // Never report more than this much time for a single frame (e.g. after the window was dragged or the process
+    // was paused in a debugger), so that a single long frame doesn't send the simulation flying:
+    private static final long MAX_FRAME_NANOS = 250000000;
+
+    private long frameNanos;
+    private long stepNanos;
+    private int maxSteps = 5;
+    private long syntheticFrameNanos;
+    private boolean started;
+    private long lastFrameStart, nextFrameStart;
+    private long frameDelta;
+    private long accumulator;
+    private int stepsThisFrame;
+
+    FramePacer(float framesPerSecond) {
+        setFrameRate(framesPerSecond);
+    }
+
+    /**
+     * @param framesPerSecond The target render rate. If zero, frames will not be capped.
+     */
+    void setFrameRate(float framesPerSecond) {
+        frameNanos = (framesPerSecond > 0) ? (long)(1000000000.0 / framesPerSecond) : 0;
+    }
+
+    /**
+     * @param updatesPerSecond The fixed update rate. If zero, fixed-rate updates are disabled.
+     */
+    void setFixedUpdateRate(float updatesPerSecond) {
+        stepNanos = (updatesPerSecond > 0) ? (long)(1000000000.0 / updatesPerSecond) : 0;
+        accumulator = 0;
+    }
+
+    /**
+     * @param steps The maximum number of fixed-rate updates that will be run in a single frame.
+     */
+    void setMaxUpdateSteps(int steps) {
+        maxSteps = Math.max(1, steps);
+    }
+
+    /**
+     * @param seconds A fixed amount of time to report for every frame instead of measuring it. If zero, frame times
+     *                will be measured.
+     */
+    void setSyntheticFrameDelta(float seconds) {
+        syntheticFrameNanos = (long)(seconds * 1000000000.0);
+    }
+
+    /**
+     * Marks the start of a new frame and measures the time since the start of the previous one.
+     */
+    void beginFrame() {
+        long now = System.nanoTime();
+        if (!started) {
+            started = true;
+            lastFrameStart = now;
+            nextFrameStart = now;
+        }
+        frameDelta = (syntheticFrameNanos > 0) ? syntheticFrameNanos : Math.min(now - lastFrameStart, MAX_FRAME_NANOS);
+        lastFrameStart = now;
+        if (stepNanos > 0) {
+            accumulator += frameDelta;
+        }
+        stepsThisFrame = 0;
+    }
+
+    /**
+     * Consumes one fixed-rate update worth of accumulated time, if enough time has accumulated.
+     * @return Whether or not a fixed-rate update should be run.
+     */
+    boolean takeFixedStep() {
+        if (stepNanos == 0 || accumulator < stepNanos) {
+            return false;
+        }
+
+        // If we've run out of updates for this frame, drop the backlog rather than falling further behind:
+        if (stepsThisFrame >= maxSteps) {
+            accumulator %= stepNanos;
+            return false;
+        }
+
+        accumulator -= stepNanos;
+        stepsThisFrame++;
+        return true;
+    }
+
+    /**
+     * @return The time (in seconds) since the start of the previous frame.
+     */
+    float getFrameDelta() {
+        return frameDelta / 1000000000f;
+    }
+
+    /**
+     * @return The length (in seconds) of a single fixed-rate update, or zero if fixed-rate updates are disabled.
+     */
+    float getStepDelta() {
+        return stepNanos / 1000000000f;
+    }
+
+    /**
+     * @return How far (between 0 and 1) the current frame is between the previous and next fixed-rate update.
+     */
+    float getInterpolationAlpha() {
+        return (stepNanos > 0) ? (float)accumulator / stepNanos : 1;
+    }
+
+    /**
+     * Blocks until the next frame should start.
+     */
+    void waitForNextFrame() {
+        if (frameNanos == 0) {
+            return;
+        }
+
+        // Schedule against the previous deadline instead of the current time so that rounding doesn't drift:
+        nextFrameStart += frameNanos;
+        long now = System.nanoTime();
+        if (now - nextFrameStart > frameNanos) {
+            // We're more than a frame behind, so give up on catching up and start the schedule over:
+            nextFrameStart = now;
+            return;
+        }
+
+        // Park for most of the remaining time and spin for the last stretch:
+        long remaining;
+        while ((remaining = nextFrameStart - System.nanoTime()) > SPIN_THRESHOLD_NANOS) {
+            LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+        }
+        while (nextFrameStart - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+package engine;
+
+public enum FramePhase {
+    /**
+     * Processing keyboard and mouse input.
+     */
+    POLL_EVENTS,
+
+    /**
+     * Clearing the render target at the start of the frame.
+     */
+    CLEAR,
+
+    /**
+     * Running Game.fixedUpdate() for all of the fixed-rate updates in the frame.
+     */
+    FIXED_UPDATE,
+
+    /**
+     * Running Game.update().
+     */
+    UPDATE,
+
+    /**
+     * Drawing batched sprites and, with tiled rendering, everything else that was drawn during the frame.
+     */
+    RENDER,
+
+    /**
+     * Scaling the render target into the window.
+     */
+    BLIT,
+
+    /**
+     * Asking the window to show the new frame.
+     */
+    REPAINT,
+
+    /**
+     * Waiting for the next frame to start.
+     */
+    WAIT,
+}
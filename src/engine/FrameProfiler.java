@@ -0,0 +1,178 @@
+package engine;
+
+import java.awt.*;
+import java.util.Arrays;
+import jdk.jfr.EventType;
+
+/**
+ * Records how long each phase of the frame takes over a rolling window of recent frames.
+ */
+final class FrameProfiler {
+
+    static final int HISTORY = 240;
+
+    private static final FramePhase[] PHASES = FramePhase.values();
+    private static final java.awt.Color[] PHASE_COLORS = {
+        Color.CORNFLOWER_BLUE.color, Color.GRAY.color, Color.ORANGE.color, Color.LIME_GREEN.color,
+        Color.GOLD.color, Color.MEDIUM_PURPLE.color, Color.HOT_PINK.color, Color.DIM_GRAY.color,
+    };
+    private static final java.awt.Color OVERLAY_BACKGROUND = new java.awt.Color(0, 0, 0, 160);
+    private static final java.awt.Font OVERLAY_FONT = new java.awt.Font(java.awt.Font.MONOSPACED, java.awt.Font.PLAIN, 11);
+
+    // Checking the event type lets frames skip creating an event while nothing is recording it:
+    private static final EventType FRAME_EVENT_TYPE = EventType.getEventType(FrameEvent.class);
+
+    // Per-phase and total times for the last HISTORY frames, indexed as a ring buffer:
+    private final long[][] phaseNanos = new long[PHASES.length][HISTORY];
+    private final long[] frameNanos = new long[HISTORY];
+    private final long[] sortedFrameNanos = new long[HISTORY];
+    private int nextFrame, frameCount;
+    private boolean sortedValid;
+
+    // The frame currently being recorded:
+    private final long[] currentNanos = new long[PHASES.length];
+    private FramePhase currentPhase;
+    private long phaseStart;
+    private FrameEvent event;
+
+    boolean overlayVisible;
+
+    /**
+     * Finishes recording the previous frame, if any, and starts recording a new one.
+     */
+    void beginFrame() {
+        long now = System.nanoTime();
+        if (currentPhase != null) {
+            currentNanos[currentPhase.ordinal()] += now - phaseStart;
+            recordFrame();
+        }
+        Arrays.fill(currentNanos, 0);
+        currentPhase = null;
+        phaseStart = now;
+
+        if (FRAME_EVENT_TYPE.isEnabled()) {
+            event = new FrameEvent();
+            event.begin();
+        }
+    }
+
+    /**
+     * Ends the current phase and attributes the time from now on to another one.
+     * @param phase The phase that is starting.
+     */
+    void beginPhase(FramePhase phase) {
+        long now = System.nanoTime();
+        if (currentPhase != null) {
+            currentNanos[currentPhase.ordinal()] += now - phaseStart;
+        }
+        currentPhase = phase;
+        phaseStart = now;
+    }
+
+    private void recordFrame() {
+        long total = 0;
+        for (int i = 0; i < PHASES.length; i++) {
+            phaseNanos[i][nextFrame] = currentNanos[i];
+            total += currentNanos[i];
+        }
+        frameNanos[nextFrame] = total;
+        nextFrame = (nextFrame + 1) % HISTORY;
+        frameCount = Math.min(frameCount + 1, HISTORY);
+        sortedValid = false;
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.pollEvents = currentNanos[FramePhase.POLL_EVENTS.ordinal()];
+                event.clear = currentNanos[FramePhase.CLEAR.ordinal()];
+                event.fixedUpdate = currentNanos[FramePhase.FIXED_UPDATE.ordinal()];
+                event.update = currentNanos[FramePhase.UPDATE.ordinal()];
+                event.render = currentNanos[FramePhase.RENDER.ordinal()];
+                event.blit = currentNanos[FramePhase.BLIT.ordinal()];
+                event.repaint = currentNanos[FramePhase.REPAINT.ordinal()];
+                event.waitTime = currentNanos[FramePhase.WAIT.ordinal()];
+                event.commit();
+            }
+            event = null;
+        }
+    }
+
+    /**
+     * @param percentile The percentile to query, between 0 and 100.
+     * @return The frame time (in nanoseconds) at the given percentile over recent frames.
+     */
+    long getFrameTimePercentile(float percentile) {
+        if (frameCount == 0) {
+            return 0;
+        }
+        if (!sortedValid) {
+            System.arraycopy(frameNanos, 0, sortedFrameNanos, 0, frameCount);
+            Arrays.sort(sortedFrameNanos, 0, frameCount);
+            sortedValid = true;
+        }
+        int index = (int)Math.ceil(Engine.clamp(percentile, 0, 100) / 100 * frameCount) - 1;
+        return sortedFrameNanos[Math.max(0, index)];
+    }
+
+    /**
+     * @param phase The phase to query.
+     * @return The average time (in nanoseconds) spent in a phase over recent frames.
+     */
+    long getAveragePhaseTime(FramePhase phase) {
+        if (frameCount == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (int i = 0; i < frameCount; i++) {
+            total += phaseNanos[phase.ordinal()][i];
+        }
+        return total / frameCount;
+    }
+
+    /**
+     * Draws a graph of recent frame times, with each bar split up by phase.
+     * @param g The graphics to draw with.
+     * @param x The left edge of the graph.
+     * @param y The top edge of the graph.
+     */
+    void drawOverlay(Graphics2D g, int x, int y) {
+        final int graphHeight = 100;
+        final float pixelsPerMillisecond = graphHeight / 33.3f;
+
+        // Draw the background and a line at 60 frames per second:
+        g.setColor(OVERLAY_BACKGROUND);
+        g.fillRect(x, y, HISTORY, graphHeight + 48);
+        g.setColor(Color.DARK_GRAY.color);
+        g.drawLine(x, y + graphHeight - (int)(16.67f * pixelsPerMillisecond), x + HISTORY - 1, y + graphHeight - (int)(16.67f * pixelsPerMillisecond));
+
+        // Draw one stacked bar per frame, oldest on the left:
+        for (int i = 0; i < frameCount; i++) {
+            int frame = (nextFrame - frameCount + i + HISTORY) % HISTORY;
+            int barX = x + HISTORY - frameCount + i;
+            float barY = y + graphHeight;
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                float height = phaseNanos[phase][frame] / 1000000f * pixelsPerMillisecond;
+                if (height > 0) {
+                    g.setColor(PHASE_COLORS[phase]);
+                    g.drawLine(barX, Math.max(y, (int)(barY - height)), barX, (int)barY);
+                    barY -= height;
+                }
+            }
+        }
+
+        // Draw the frame time percentiles and a legend:
+        g.setFont(OVERLAY_FONT);
+        g.setColor(Color.WHITE.color);
+        g.drawString(String.format("p50 %.2f  p95 %.2f  p99 %.2f ms", getFrameTimePercentile(50) / 1e6f,
+            getFrameTimePercentile(95) / 1e6f, getFrameTimePercentile(99) / 1e6f), x + 4, y + graphHeight + 14);
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            int legendX = x + 4 + (phase % 4) * 59;
+            int legendY = y + graphHeight + 20 + (phase / 4) * 13;
+            g.setColor(PHASE_COLORS[phase]);
+            g.fillRect(legendX, legendY + 3, 6, 6);
+            g.setColor(Color.WHITE.color);
+            g.drawString(PHASES[phase].name().toLowerCase().replace("_", " "), legendX + 9, legendY + 10);
+        }
+    }
+
+}
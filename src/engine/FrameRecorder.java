@@ -0,0 +1,299 @@
+package engine;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Captures finished frames and writes them to disk on a background thread. Each captured frame is copied into one of
+ * a few pooled buffers and handed to the encoder thread through a queue. If the encoder falls behind and every buffer
+ * is in use, frames are skipped rather than making the game wait.
+ */
+final class FrameRecorder {
+
+    // The number of frames that can be waiting to be written at once:
+    private static final int POOL_SIZE = 4;
+
+    /**
+     * A captured frame, and how long it was shown for (in seconds).
+     */
+    private static final class Frame {
+        final int[] pixels;
+        final float duration;
+
+        Frame(int[] pixels, float duration) {
+            this.pixels = pixels;
+            this.duration = duration;
+        }
+    }
+
+    // Tells the encoder thread that there are no more frames:
+    private static final Frame END = new Frame(null, 0);
+
+    private ArrayBlockingQueue<int[]> pool;
+    private ArrayBlockingQueue<Frame> queue;
+    private Thread thread;
+    private volatile Exception failure;
+
+    // Every encoder thread that has been started, including ones still writing frames from an earlier capture:
+    private final ArrayList<Thread> encoders = new ArrayList<Thread>();
+    private boolean shutdownHookAdded;
+
+    private int interval;
+    private long frame;
+    private float duration;
+    private int captured, dropped;
+
+    synchronized boolean isCapturing() {
+        return thread != null;
+    }
+
+    synchronized int getCapturedFrames() {
+        return captured;
+    }
+
+    synchronized int getDroppedFrames() {
+        return dropped;
+    }
+
+    /**
+     * Starts capturing frames, stopping any capture that is already running.
+     * @param path The directory to write a PNG sequence into, or the file to write a GIF to.
+     * @param format The format to write.
+     * @param interval The number of frames between captured frames (1 captures every frame).
+     * @param width The width of the frames.
+     * @param height The height of the frames.
+     */
+    synchronized void start(String path, CaptureFormat format, int interval, int width, int height) {
+        end();
+        File file = new File(path);
+        File directory = (format == CaptureFormat.PNG_SEQUENCE) ? file : file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new Error("Failed to create capture directory: " + directory);
+        }
+
+        // The queue has room for the end marker even when every pooled buffer is waiting in it:
+        pool = new ArrayBlockingQueue<int[]>(POOL_SIZE);
+        queue = new ArrayBlockingQueue<Frame>(POOL_SIZE + 1);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            pool.add(new int[width * height]);
+        }
+        this.interval = Math.max(1, interval);
+        frame = 0;
+        duration = 0;
+        captured = 0;
+        dropped = 0;
+        failure = null;
+
+        // The thread is a daemon so that it never keeps the game running by itself. Instead, a shutdown hook finishes
+        // writing the frames that are still in the queue when the game exits (including when the window is closed):
+        if (!shutdownHookAdded) {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::finish, "Frame Recorder Shutdown"));
+            shutdownHookAdded = true;
+        }
+        ArrayBlockingQueue<int[]> pool = this.pool;
+        ArrayBlockingQueue<Frame> queue = this.queue;
+        thread = new Thread(() -> encode(file, format, width, height, pool, queue), "Frame Recorder");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        encoders.removeIf(encoder -> !encoder.isAlive());
+        encoders.add(thread);
+        thread.start();
+    }
+
+    /**
+     * Stops capturing. Frames that were already captured are still written in the background.
+     * Throws an Error if writing an earlier frame failed.
+     */
+    synchronized void stop() {
+        end();
+        checkFailure();
+    }
+
+    private void end() {
+        if (thread != null) {
+            queue.add(END);
+            thread = null;
+        }
+    }
+
+    /**
+     * Throws an Error if writing a frame has failed since the last time this was checked, ending the capture.
+     */
+    private void checkFailure() {
+        if (failure != null) {
+            Exception failure = this.failure;
+            this.failure = null;
+            end();
+            throw new Error("Failed to write captured frames", failure);
+        }
+    }
+
+    /**
+     * Stops capturing and waits until every captured frame has been written and every file has been finished.
+     */
+    void finish() {
+        ArrayList<Thread> running;
+        synchronized (this) {
+            end();
+            running = new ArrayList<Thread>(encoders);
+            encoders.clear();
+        }
+        boolean interrupted = false;
+        for (Thread encoder : running) {
+            while (encoder.isAlive()) {
+                try {
+                    encoder.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Captures a finished frame, unless it is between captured frames or every pooled buffer is in use.
+     * @param pixels The pixels of the frame.
+     * @param timeDelta How long the frame will be shown for (in seconds).
+     */
+    synchronized void capture(int[] pixels, float timeDelta) {
+        if (thread == null) {
+            return;
+        }
+        checkFailure();
+
+        // Skipped frames still count towards how long the last captured frame is shown for:
+        duration += timeDelta;
+        if (frame++ % interval != 0) {
+            return;
+        }
+        int[] buffer = pool.poll();
+        if (buffer == null) {
+            dropped++;
+            return;
+        }
+        System.arraycopy(pixels, 0, buffer, 0, buffer.length);
+        queue.add(new Frame(buffer, duration));
+        duration = 0;
+        captured++;
+    }
+
+    private void encode(File file, CaptureFormat format, int width, int height, ArrayBlockingQueue<int[]> pool, ArrayBlockingQueue<Frame> queue) {
+        // The frames are opaque and premultiplied, so their pixels can be written as RGB without any conversion:
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] imagePixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+        GifWriter gif = null;
+        try {
+            if (format == CaptureFormat.GIF) {
+                gif = new GifWriter(file, image);
+            }
+            for (int index = 0; ; index++) {
+                Frame next = queue.take();
+                if (next == END) {
+                    break;
+                }
+                System.arraycopy(next.pixels, 0, imagePixels, 0, imagePixels.length);
+                pool.add(next.pixels);
+                if (gif != null) {
+                    gif.write(image, next.duration);
+                } else {
+                    ImageIO.write(image, "png", new File(file, String.format("frame_%06d.png", index)));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (gif != null) {
+                try {
+                    gif.close();
+                } catch (IOException | RuntimeException e) {
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes frames to a looping animated GIF.
+     */
+    private static final class GifWriter {
+
+        private final ImageWriter writer;
+        private final ImageOutputStream output;
+        private final ImageTypeSpecifier type;
+        private boolean first = true;
+
+        // GIF frame delays are in hundredths of a second, so the rounding error is carried over to the next frame:
+        private float remainder;
+
+        GifWriter(File file, BufferedImage image) throws IOException {
+            writer = ImageIO.getImageWritersByFormatName("gif").next();
+            file.delete();
+            output = ImageIO.createImageOutputStream(file);
+            writer.setOutput(output);
+            writer.prepareWriteSequence(null);
+            type = ImageTypeSpecifier.createFromRenderedImage(image);
+        }
+
+        void write(BufferedImage image, float duration) throws IOException {
+            float delay = duration * 100 + remainder;
+            int centiseconds = Math.max(1, Math.round(delay));
+            remainder = delay - centiseconds;
+
+            IIOMetadata metadata = writer.getDefaultImageMetadata(type, null);
+            String format = metadata.getNativeMetadataFormatName();
+            IIOMetadataNode root = (IIOMetadataNode)metadata.getAsTree(format);
+            IIOMetadataNode control = getChild(root, "GraphicControlExtension");
+            control.setAttribute("disposalMethod", "none");
+            control.setAttribute("userInputFlag", "FALSE");
+            control.setAttribute("transparentColorFlag", "FALSE");
+            control.setAttribute("delayTime", Integer.toString(centiseconds));
+            control.setAttribute("transparentColorIndex", "0");
+            if (first) {
+                // Make the animation loop forever:
+                IIOMetadataNode extension = new IIOMetadataNode("ApplicationExtension");
+                extension.setAttribute("applicationID", "NETSCAPE");
+                extension.setAttribute("authenticationCode", "2.0");
+                extension.setUserObject(new byte[] { 1, 0, 0 });
+                getChild(root, "ApplicationExtensions").appendChild(extension);
+                first = false;
+            }
+            metadata.setFromTree(format, root);
+            writer.writeToSequence(new IIOImage(image, null, metadata), null);
+        }
+
+        void close() throws IOException {
+            writer.endWriteSequence();
+            output.close();
+            writer.dispose();
+        }
+
+        private static IIOMetadataNode getChild(IIOMetadataNode root, String name) {
+            for (int i = 0; i < root.getLength(); i++) {
+                if (root.item(i).getNodeName().equals(name)) {
+                    return (IIOMetadataNode)root.item(i);
+                }
+            }
+            IIOMetadataNode node = new IIOMetadataNode(name);
+            root.appendChild(node);
+            return node;
+        }
+
+    }
+
+}
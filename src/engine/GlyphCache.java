@@ -0,0 +1,228 @@
+package engine;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.TextAttribute;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The glyphs of a font, rasterized once into coverage masks so that text can be drawn by blending the masks straight
+ * into the render target's pixels instead of going through Java2D's text pipeline every time.
+ * Glyphs are positioned with whole-pixel advances, the same way as Java2D draws text without fractional metrics.
+ */
+final class GlyphCache {
+
+    private static final int MAX_COLOR_TABLES = 16;
+
+    /**
+     * A rasterized glyph. Its coverage mask is positioned relative to the pen position on the baseline.
+     */
+    static final class Glyph {
+        final int advance;
+        final int x, y, width, height;
+        final byte[] coverage;
+
+        Glyph(int advance, int x, int y, int width, int height, byte[] coverage) {
+            this.advance = advance;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.coverage = coverage;
+        }
+    }
+
+    private final java.awt.Font font;
+    private final FontMetrics metrics;
+    private final FontRenderContext context;
+    private final boolean kerning;
+
+    // Latin-1 glyphs are looked up directly, and anything else by character:
+    private final Glyph[] latinGlyphs = new Glyph[256];
+    private final HashMap<Character, Glyph> otherGlyphs = new HashMap<Character, Glyph>();
+    private final HashMap<Integer, Integer> kerningPairs = new HashMap<Integer, Integer>();
+
+    // Text is copied into this to check whether it needs complex layout, so that checking doesn't allocate:
+    private char[] layoutChars = new char[64];
+
+    // The premultiplied color for each coverage value, for the most recently used text colors:
+    private final LinkedHashMap<Integer, int[]> colorTables = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+            return size() > MAX_COLOR_TABLES;
+        }
+    };
+
+    GlyphCache(java.awt.Font font, FontMetrics metrics) {
+        this.font = font;
+        this.metrics = metrics;
+        this.context = metrics.getFontRenderContext();
+        this.kerning = TextAttribute.KERNING_ON.equals(font.getAttributes().get(TextAttribute.KERNING));
+    }
+
+    /**
+     * @return Whether or not the text can be drawn one glyph at a time, which isn't the case for scripts that need
+     *         complex layout (e.g. Arabic) or characters outside of the Basic Multilingual Plane.
+     */
+    boolean canDraw(String text) {
+        int length = text.length();
+        boolean checkLayout = false;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (Character.isSurrogate(c)) {
+                return false;
+            }
+            checkLayout |= c >= 0x0590;
+        }
+        if (!checkLayout) {
+            return true;
+        }
+
+        if (layoutChars.length < length) {
+            layoutChars = new char[Math.max(length, layoutChars.length * 2)];
+        }
+        text.getChars(0, length, layoutChars, 0);
+        return !java.awt.Font.textRequiresLayout(layoutChars, 0, length);
+    }
+
+    /**
+     * Rasterizes any glyphs in the text that haven't been rasterized yet. This has to be done before the text is
+     * drawn from other threads, which only ever read from the cache.
+     */
+    void prepare(String text) {
+        char previous = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            getGlyph(c);
+            if (kerning && i > 0) {
+                getKerning(previous, c);
+            }
+            previous = c;
+        }
+    }
+
+    Glyph getGlyph(char c) {
+        Glyph glyph = (c < latinGlyphs.length) ? latinGlyphs[c] : otherGlyphs.get(c);
+        if (glyph == null) {
+            glyph = rasterize(c);
+            if (c < latinGlyphs.length) {
+                latinGlyphs[c] = glyph;
+            } else {
+                otherGlyphs.put(c, glyph);
+            }
+        }
+        return glyph;
+    }
+
+    /**
+     * @return The adjustment to the advance between two characters (in pixels), which is zero unless the font has
+     *         kerning enabled.
+     */
+    int getKerning(char first, char second) {
+        if (!kerning) {
+            return 0;
+        }
+        int key = (first << 16) | second;
+        Integer adjustment = kerningPairs.get(key);
+        if (adjustment == null) {
+            GlyphVector pair = font.createGlyphVector(context, new char[] { first, second });
+            adjustment = (int)Math.round(pair.getGlyphPosition(1).getX()) - metrics.charWidth(first);
+            kerningPairs.put(key, adjustment);
+        }
+        return adjustment;
+    }
+
+    /**
+     * @param color A text color, in non-premultiplied ARGB order.
+     * @return The color premultiplied by each possible coverage value, for drawing text with draw().
+     */
+    int[] getColorTable(int color) {
+        int[] table = colorTables.get(color);
+        if (table == null) {
+            table = new int[256];
+            int alpha = color >>> 24;
+            for (int coverage = 0; coverage < 256; coverage++) {
+                int a = PixelBuffer.mul8(coverage, alpha);
+                table[coverage] = (a << 24) | (PixelBuffer.mul8(a, (color >> 16) & 0xFF) << 16) | (PixelBuffer.mul8(a, (color >> 8) & 0xFF) << 8) | PixelBuffer.mul8(a, color & 0xFF);
+            }
+            if (alpha == 0xFF) {
+                // Keep full coverage exact rather than rounded:
+                table[255] = color;
+            }
+            colorTables.put(color, table);
+        }
+        return table;
+    }
+
+    private Glyph rasterize(char c) {
+        int advance = metrics.charWidth(c);
+        GlyphVector vector = font.createGlyphVector(context, new char[] { c });
+        Rectangle bounds = vector.getPixelBounds(context, 0, 0);
+        if (bounds.width <= 0 || bounds.height <= 0) {
+            return new Glyph(advance, 0, 0, 0, 0, new byte[0]);
+        }
+
+        // Draw the glyph in white with the same hints as the render target, and keep its alpha as coverage:
+        BufferedImage image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.setColor(java.awt.Color.WHITE);
+        graphics.drawGlyphVector(vector, -bounds.x, -bounds.y);
+        graphics.dispose();
+        byte[] coverage = new byte[bounds.width * bounds.height];
+        for (int v = 0; v < bounds.height; v++) {
+            for (int u = 0; u < bounds.width; u++) {
+                coverage[v * bounds.width + u] = (byte)(image.getRGB(u, v) >>> 24);
+            }
+        }
+        return new Glyph(advance, bounds.x, bounds.y, bounds.width, bounds.height, coverage);
+    }
+
+    /**
+     * Draws text whose glyphs have all been prepared.
+     * @param pixels The pixels to draw into.
+     * @param text The text to draw.
+     * @param x The left edge of the text (in pixels).
+     * @param y The baseline of the text (in pixels).
+     * @param colors The color of the text, from getColorTable().
+     */
+    void draw(PixelBuffer pixels, String text, int x, int y, int[] colors) {
+        int[] dst = pixels.pixels;
+        char previous = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            Glyph glyph = (c < latinGlyphs.length) ? latinGlyphs[c] : otherGlyphs.get(c);
+            if (i > 0) {
+                x += getKerning(previous, c);
+            }
+            previous = c;
+
+            // Clip the glyph's mask to the pixels:
+            int gx = x + glyph.x;
+            int gy = y + glyph.y;
+            int x1 = Math.max(gx, pixels.clipX1);
+            int y1 = Math.max(gy, pixels.clipY1);
+            int x2 = Math.min(gx + glyph.width, pixels.clipX2);
+            int y2 = Math.min(gy + glyph.height, pixels.clipY2);
+            byte[] mask = glyph.coverage;
+            for (int py = y1; py < y2; py++) {
+                int s = (py - gy) * glyph.width + (x1 - gx);
+                int d = py * pixels.width + x1;
+                int end = d + (x2 - x1);
+                for (; d < end; s++, d++) {
+                    int coverage = mask[s] & 0xFF;
+                    if (coverage != 0) {
+                        dst[d] = PixelBuffer.blend(colors[coverage], dst[d]);
+                    }
+                }
+            }
+            x += glyph.advance;
+        }
+    }
+
+}
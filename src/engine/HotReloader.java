@@ -0,0 +1,215 @@
+package engine;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+/**
+ * Watches the "assets" directory for changed files and reloads any loaded textures, resizable textures, fonts and
+ * sounds that came from them, for use during development. Files are decoded on a background thread, and the new data
+ * is swapped into the existing asset objects on the game's thread at the start of a frame, so that the game keeps
+ * using the same references. Sounds loaded from their own files don't need reloading, because they are read again
+ * every time they are played, but sounds loaded from the asset archive have their samples replaced.
+ */
+final class HotReloader {
+
+    // Editors often write a file in several steps, so changes are only reloaded once they stop for this long:
+    private static final long DEBOUNCE_MILLIS = 200;
+
+    private final AssetCache cache;
+    private WatchService watcher;
+    private Thread thread;
+
+    // The swaps for each batch of changed files, which are applied together:
+    private final ConcurrentLinkedQueue<ArrayList<Runnable>> batches = new ConcurrentLinkedQueue<ArrayList<Runnable>>();
+
+    HotReloader(AssetCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Starts watching a directory, and every directory inside it.
+     * @param root The "assets" directory.
+     */
+    synchronized void start(Path root) {
+        if (thread != null) {
+            return;
+        }
+        HashMap<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+        try {
+            watcher = root.getFileSystem().newWatchService();
+            register(root, directories);
+        } catch (IOException e) {
+            throw new Error("Failed to watch the assets directory for changes.", e);
+        }
+        WatchService service = watcher;
+        thread = new Thread(() -> watch(service, root, directories), "Hot Reloader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching for changes. Changes that have already been reloaded are still applied.
+     */
+    synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            // The thread stops either way.
+        }
+        watcher = null;
+        thread = null;
+    }
+
+    /**
+     * Swaps the reloaded data into the assets. This must be called on the game's thread, while nothing is drawing.
+     */
+    void apply() {
+        ArrayList<Runnable> batch;
+        while ((batch = batches.poll()) != null) {
+            for (Runnable swap : batch) {
+                swap.run();
+            }
+        }
+    }
+
+    private void register(Path directory, HashMap<WatchKey, Path> directories) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attributes) throws IOException {
+                directories.put(path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY), path);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watch(WatchService service, Path root, HashMap<WatchKey, Path> directories) {
+        try {
+            while (true) {
+                // Wait for a change, and then keep collecting changes until they stop:
+                LinkedHashSet<Path> changed = new LinkedHashSet<Path>();
+                WatchKey key = service.take();
+                do {
+                    collect(key, root, directories, changed);
+                } while ((key = service.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+                ArrayList<Runnable> batch = new ArrayList<Runnable>();
+                for (Path path : changed) {
+                    reload(root, path, batch);
+                }
+                if (!batch.isEmpty()) {
+                    batches.add(batch);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Watching has been stopped.
+        }
+    }
+
+    /**
+     * Adds the paths (relative to the root) of the files that a watch key has seen change.
+     */
+    private void collect(WatchKey key, Path root, HashMap<WatchKey, Path> directories, LinkedHashSet<Path> changed) {
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (directory == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                continue;
+            }
+            Path path = directory.resolve((Path)event.context());
+            if (Files.isDirectory(path)) {
+                // Watch directories that were added too:
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    try {
+                        register(path, directories);
+                    } catch (IOException e) {
+                        System.err.println("Failed to watch " + path + " for changes: " + e.getMessage());
+                    }
+                }
+            } else {
+                changed.add(root.relativize(path).normalize());
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    /**
+     * Decodes a changed file and adds a swap for each loaded asset that came from it.
+     */
+    private void reload(Path root, Path path, ArrayList<Runnable> batch) {
+        ArrayList<Object> assets = cache.getAssets(path);
+        if (assets.isEmpty()) {
+            return;
+        }
+        File file = root.resolve(path).toFile();
+        try {
+            BufferedImage image = null;
+            for (Object asset : assets) {
+                if (asset instanceof Texture || asset instanceof ResizableTexture) {
+                    if (image == null) {
+                        image = ImageIO.read(file);
+                        if (image == null) {
+                            throw new IOException("not in a supported format");
+                        }
+                        image = Engine.convertImage(image);
+                    }
+                    BufferedImage replacement = image;
+                    if (asset instanceof Texture) {
+                        Texture texture = (Texture)asset;
+                        if (checkSize(path, texture.width, texture.height, replacement)) {
+                            batch.add(() -> texture.replaceImage(replacement));
+                        }
+                    } else {
+                        ResizableTexture texture = (ResizableTexture)asset;
+                        if (checkSize(path, texture.width, texture.height, replacement)) {
+                            batch.add(() -> texture.replaceImage(replacement));
+                        }
+                    }
+                } else if (asset instanceof Font) {
+                    Font font = (Font)asset;
+                    java.awt.Font replacement = java.awt.Font.createFont(java.awt.Font.TRUETYPE_FONT, file).deriveFont(font.font.getSize2D());
+                    GraphicsEnvironment.getLocalGraphicsEnvironment().registerFont(replacement);
+                    batch.add(() -> font.replaceFont(replacement));
+                } else if (asset instanceof Sound && ((Sound)asset).samples != null) {
+                    Sound sound = (Sound)asset;
+                    try (AudioInputStream stream = AssetPacker.openPcm(file)) {
+                        AudioFormat format = stream.getFormat();
+                        byte[] samples = stream.readAllBytes();
+                        batch.add(() -> sound.replaceSamples(format, samples));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // The file may still be being written, in which case it will be reloaded again once it has been:
+            System.err.println("Failed to reload " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return Whether or not a reloaded image is the same size as the asset it replaces, which it has to be, since the
+     *         game may have laid things out around the old size.
+     */
+    private static boolean checkSize(Path path, int width, int height, BufferedImage image) {
+        if (image.getWidth() != width || image.getHeight() != height) {
+            System.err.println("Failed to reload " + path + ": its size changed from " + width + "x" + height + " to " + image.getWidth() + "x" + image.getHeight() + ", which needs a restart.");
+            return false;
+        }
+        return true;
+    }
+
+}
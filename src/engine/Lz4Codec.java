@@ -0,0 +1,156 @@
+package engine;
+
+/**
+ * Compresses and decompresses data in the LZ4 block format, which decompresses many times faster than PNG decodes.
+ * This is used for textures in asset archives, whose transparent areas and flat colors compress well.
+ */
+final class Lz4Codec {
+
+    private static final int MIN_MATCH = 4;
+
+    // The format requires the last 5 bytes to be literals, and the last match to start 12 bytes before the end:
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_LIMIT = 12;
+
+    private static final int HASH_BITS = 16;
+    private static final int MAX_OFFSET = 65535;
+
+    private Lz4Codec() {
+    }
+
+    /**
+     * @param src The data to compress.
+     * @return The compressed data.
+     */
+    static byte[] compress(byte[] src) {
+        byte[] dst = new byte[src.length + src.length / 255 + 16];
+        int d = 0;
+        int anchor = 0;
+
+        // Find matches greedily by remembering where each 4 byte sequence was last seen:
+        int[] table = new int[1 << HASH_BITS];
+        for (int i = 0; i < src.length - MATCH_LIMIT; ) {
+            int sequence = readInt(src, i);
+            int hash = (sequence * 0x9E3779B1) >>> (32 - HASH_BITS);
+            int match = table[hash] - 1;
+            table[hash] = i + 1;
+            if (match < 0 || i - match > MAX_OFFSET || readInt(src, match) != sequence) {
+                i++;
+                continue;
+            }
+
+            int length = MIN_MATCH;
+            while (i + length < src.length - LAST_LITERALS && src[match + length] == src[i + length]) {
+                length++;
+            }
+            int token = d;
+            d = writeLiterals(src, anchor, i - anchor, dst, d);
+            dst[d++] = (byte)(i - match);
+            dst[d++] = (byte)((i - match) >>> 8);
+            dst[token] |= (byte)Math.min(length - MIN_MATCH, 15);
+            d = writeLength(length - MIN_MATCH, dst, d);
+            i += length;
+            anchor = i;
+        }
+
+        // The rest of the data is literals, without a match:
+        d = writeLiterals(src, anchor, src.length - anchor, dst, d);
+        byte[] result = new byte[d];
+        System.arraycopy(dst, 0, result, 0, d);
+        return result;
+    }
+
+    /**
+     * Writes a token holding the number of literals (the match length is added to it afterwards), followed by the
+     * literals.
+     * @return The position after the literals.
+     */
+    private static int writeLiterals(byte[] src, int start, int count, byte[] dst, int d) {
+        dst[d++] = (byte)(Math.min(count, 15) << 4);
+        d = writeLength(count, dst, d);
+        System.arraycopy(src, start, dst, d, count);
+        return d + count;
+    }
+
+    /**
+     * Writes the bytes that follow a token for a length that doesn't fit in the token's 4 bits.
+     * @return The position after the bytes.
+     */
+    private static int writeLength(int length, byte[] dst, int d) {
+        if (length >= 15) {
+            int remaining = length - 15;
+            while (remaining >= 255) {
+                dst[d++] = (byte)255;
+                remaining -= 255;
+            }
+            dst[d++] = (byte)remaining;
+        }
+        return d;
+    }
+
+    private static int readInt(byte[] src, int i) {
+        return (src[i] & 0xFF) | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF) << 16 | (src[i + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * @param src The compressed data.
+     * @param dst The array to decompress into, which must be exactly the size of the decompressed data.
+     */
+    static void decompress(byte[] src, byte[] dst) {
+        int s = 0;
+        int end = src.length;
+        int d = 0;
+        try {
+            while (true) {
+                int token = src[s++] & 0xFF;
+
+                // Copy the literals:
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = src[s++] & 0xFF;
+                        literals += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, s, dst, d, literals);
+                s += literals;
+                d += literals;
+                if (s >= end) {
+                    break;
+                }
+
+                // Copy the match, which can overlap the bytes it is copying when it repeats a short pattern:
+                int offset = (src[s] & 0xFF) | (src[s + 1] & 0xFF) << 8;
+                s += 2;
+                int length = token & 15;
+                if (length == 15) {
+                    int b;
+                    do {
+                        b = src[s++] & 0xFF;
+                        length += b;
+                    } while (b == 255);
+                }
+                length += MIN_MATCH;
+                int from = d - offset;
+                if (offset == 0 || from < 0) {
+                    throw new IndexOutOfBoundsException();
+                }
+                if (offset >= length) {
+                    System.arraycopy(dst, from, dst, d, length);
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        dst[d + i] = dst[from + i];
+                    }
+                }
+                d += length;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new Error("Compressed data is corrupt.", e);
+        }
+        if (d != dst.length) {
+            throw new Error("Compressed data is corrupt.");
+        }
+    }
+
+}
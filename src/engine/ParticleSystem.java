@@ -0,0 +1,399 @@
+package engine;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A large number of simple particles, each with a position, velocity, lifetime and color. Particles are stored in
+ * primitive arrays rather than as objects, so updating them doesn't allocate anything, and they are drawn all at once
+ * with Engine.drawParticles() rather than with one draw call each.
+ */
+public class ParticleSystem {
+
+    // The number of particles updated by each task when updating in parallel:
+    private static final int CHUNK_SIZE = 8192;
+
+    // The number of colors remembered when drawing with Java2D, which needs a color object for each color:
+    private static final int COLOR_CACHE_SIZE = 256;
+
+    final Texture texture;
+    private int count;
+    private final float[] x, y, vx, vy, age, lifetime;
+    private final int[] colors;
+
+    private float accelerationX, accelerationY;
+    private float drag;
+    private int size = 2;
+    private boolean fade = true;
+    private boolean parallel;
+
+    // The bounds of all of the particles, as of the last update or emit:
+    float minX, minY, maxX, maxY;
+
+    // The tasks used for parallel updates, which are reused every time:
+    private UpdateTask[] tasks = new UpdateTask[0];
+    private float stepDelta;
+
+    // The color objects used when drawing with Java2D, indexed by a hash of their color:
+    private final java.awt.Color[] colorCache = new java.awt.Color[COLOR_CACHE_SIZE];
+
+    /**
+     * Creates a particle system that draws each particle as a small square.
+     * @param capacity The maximum number of live particles.
+     */
+    public ParticleSystem(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * Creates a particle system.
+     * @param capacity The maximum number of live particles.
+     * @param texture The texture to draw each particle with (centered on its position), or null to draw each particle
+     *                as a small square of its color. Textured particles are drawn with the texture's own colors, so
+     *                their color and fading are ignored.
+     */
+    public ParticleSystem(int capacity, Texture texture) {
+        this.texture = texture;
+        x = new float[capacity];
+        y = new float[capacity];
+        vx = new float[capacity];
+        vy = new float[capacity];
+        age = new float[capacity];
+        lifetime = new float[capacity];
+        colors = new int[capacity];
+    }
+
+    /**
+     * Creates a copy of another particle system's positions and colors, with fading already applied.
+     */
+    private ParticleSystem(ParticleSystem other) {
+        texture = other.texture;
+        count = other.count;
+        x = Arrays.copyOf(other.x, count);
+        y = Arrays.copyOf(other.y, count);
+        vx = null;
+        vy = null;
+        age = null;
+        lifetime = null;
+        colors = new int[count];
+        for (int i = 0; i < count; i++) {
+            colors[i] = other.getColor(i);
+        }
+        size = other.size;
+        fade = false;
+    }
+
+    /**
+     * @return The number of live particles.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @param x The acceleration applied to every particle along the x axis (in pixels per second squared).
+     * @param y The acceleration applied to every particle along the y axis (in pixels per second squared).
+     */
+    public void setAcceleration(float x, float y) {
+        accelerationX = x;
+        accelerationY = y;
+    }
+
+    /**
+     * @param drag The fraction of its velocity that each particle loses per second, between 0 and 1.
+     */
+    public void setDrag(float drag) {
+        this.drag = Math.max(0, Math.min(1, drag));
+    }
+
+    /**
+     * @param size The width and height (in pixels) of the square drawn for each particle. The default is 2.
+     */
+    public void setParticleSize(int size) {
+        this.size = Math.max(1, size);
+    }
+
+    /**
+     * @param fade Whether or not particles fade out over their lifetime. The default is true. Textured particles never
+     *             fade.
+     */
+    public void setFade(boolean fade) {
+        this.fade = fade;
+    }
+
+    /**
+     * @param parallel Whether or not to update particles on all CPU cores, which is faster for tens of thousands of
+     *                 particles.
+     */
+    public void setParallelUpdate(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Adds a particle.
+     * @param x The starting position along the x axis.
+     * @param y The starting position along the y axis.
+     * @param vx The velocity along the x axis (in pixels per second).
+     * @param vy The velocity along the y axis (in pixels per second).
+     * @param lifetime How long the particle lives (in seconds).
+     * @param color The color of the particle.
+     * @return Whether or not the particle was added, which it isn't if the system is full.
+     */
+    public boolean emit(float x, float y, float vx, float vy, float lifetime, Color color) {
+        if (count == this.x.length) {
+            return false;
+        }
+        int i = count++;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.vx[i] = vx;
+        this.vy[i] = vy;
+        this.age[i] = 0;
+        this.lifetime[i] = lifetime;
+        this.colors[i] = color.color.getRGB();
+        if (count == 1) {
+            minX = maxX = x;
+            minY = maxY = y;
+        } else {
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        return true;
+    }
+
+    /**
+     * Removes all of the particles.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Moves and ages all of the particles, and removes the ones that have reached the end of their lifetime.
+     * @param timeDelta The time to advance by (in seconds), usually Engine.getTimeDelta().
+     */
+    public void update(float timeDelta) {
+        if (parallel && count > CHUNK_SIZE) {
+            int taskCount = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            if (tasks.length < taskCount) {
+                tasks = new UpdateTask[taskCount];
+                for (int i = 0; i < taskCount; i++) {
+                    tasks[i] = new UpdateTask();
+                }
+            }
+            stepDelta = timeDelta;
+            for (int i = 0; i < taskCount; i++) {
+                tasks[i].reinitialize();
+                tasks[i].start = i * CHUNK_SIZE;
+                tasks[i].end = Math.min(count, (i + 1) * CHUNK_SIZE);
+            }
+            for (int i = 1; i < taskCount; i++) {
+                tasks[i].fork();
+            }
+            tasks[0].invoke();
+            for (int i = 1; i < taskCount; i++) {
+                tasks[i].join();
+            }
+        } else {
+            integrate(0, count, timeDelta);
+        }
+
+        // Remove dead particles by moving the last particle into their place, and measure the survivors:
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < count; ) {
+            if (age[i] >= lifetime[i]) {
+                int last = --count;
+                x[i] = x[last];
+                y[i] = y[last];
+                vx[i] = vx[last];
+                vy[i] = vy[last];
+                age[i] = age[last];
+                lifetime[i] = lifetime[last];
+                colors[i] = colors[last];
+            } else {
+                minX = Math.min(minX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxX = Math.max(maxX, x[i]);
+                maxY = Math.max(maxY, y[i]);
+                i++;
+            }
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    private void integrate(int start, int end, float timeDelta) {
+        float ax = accelerationX * timeDelta;
+        float ay = accelerationY * timeDelta;
+        float damping = (float)Math.pow(1 - drag, timeDelta);
+        for (int i = start; i < end; i++) {
+            vx[i] = (vx[i] + ax) * damping;
+            vy[i] = (vy[i] + ay) * damping;
+            x[i] += vx[i] * timeDelta;
+            y[i] += vy[i] * timeDelta;
+            age[i] += timeDelta;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class UpdateTask extends RecursiveAction {
+
+        int start, end;
+
+        @Override
+        protected void compute() {
+            integrate(start, end, stepDelta);
+        }
+
+    }
+
+    // ======================================================================================
+    // Drawing
+    // ======================================================================================
+
+    /**
+     * @return A copy of the particles as they are now, for drawing later (e.g. with tiled rendering) without being
+     *         affected by any updates in the meantime.
+     */
+    ParticleSystem copyForDrawing() {
+        return new ParticleSystem(this);
+    }
+
+    /**
+     * @return How far (in pixels) a particle's drawing can reach from its position.
+     */
+    int getExtent() {
+        return (texture != null) ? Math.max(texture.width, texture.height) / 2 + 1 : size / 2 + 1;
+    }
+
+    /**
+     * Counts the pixels that each particle covers, for Engine.getRenderStats().
+     * @param counters The counters to add to.
+     * @param transform The transform that the particles are drawn with.
+     * @param width The width of the render target.
+     * @param height The height of the render target.
+     * @param screen Whether or not the render target is the screen.
+     */
+    void countPixels(RenderCounters counters, AffineTransform transform, int width, int height, boolean screen) {
+        // Scaling by the camera's zoom is enough for an estimate, even if it's also rotating:
+        float scale = (float)Math.sqrt(Math.abs(transform.getDeterminant()));
+        int drawWidth = Math.max(1, Math.round(((texture != null) ? texture.width : size) * scale));
+        int drawHeight = Math.max(1, Math.round(((texture != null) ? texture.height : size) * scale));
+        float m00 = (float)transform.getScaleX(), m01 = (float)transform.getShearX(), m02 = (float)transform.getTranslateX();
+        float m10 = (float)transform.getShearY(), m11 = (float)transform.getScaleY(), m12 = (float)transform.getTranslateY();
+        for (int i = 0; i < count; i++) {
+            int px = (int)Math.floor(x[i] * m00 + y[i] * m01 + m02) - drawWidth / 2;
+            int py = (int)Math.floor(x[i] * m10 + y[i] * m11 + m12) - drawHeight / 2;
+            counters.fill(px, py, px + drawWidth, py + drawHeight, width, height, screen);
+        }
+    }
+
+    /**
+     * Draws the particles straight into the pixels of a render target. Textured particles can only be drawn this way if
+     * their texture's pixels can be read directly (see Texture.getPixels()).
+     * @param pixels The pixels to draw into.
+     * @param offsetX The number of pixels to move the particles by along the x axis.
+     * @param offsetY The number of pixels to move the particles by along the y axis.
+     */
+    void draw(PixelBuffer pixels, int offsetX, int offsetY) {
+        if (texture != null) {
+            int left = offsetX - texture.width / 2;
+            int top = offsetY - texture.height / 2;
+            for (int i = 0; i < count; i++) {
+                pixels.blit(texture, texture.x, texture.y, texture.width, texture.height, (int)Math.floor(x[i]) + left, (int)Math.floor(y[i]) + top, false, false);
+            }
+            return;
+        }
+
+        int[] dst = pixels.pixels;
+        int left = offsetX - size / 2;
+        int top = offsetY - size / 2;
+        for (int i = 0; i < count; i++) {
+            // Clip the particle's square to the pixels:
+            int px = (int)Math.floor(x[i]) + left;
+            int py = (int)Math.floor(y[i]) + top;
+            int x1 = Math.max(px, pixels.clipX1);
+            int y1 = Math.max(py, pixels.clipY1);
+            int x2 = Math.min(px + size, pixels.clipX2);
+            int y2 = Math.min(py + size, pixels.clipY2);
+            if (x1 >= x2 || y1 >= y2) {
+                continue;
+            }
+
+            int color = premultiply(getColor(i));
+            if ((color >>> 24) == 0xFF) {
+                for (int row = y1; row < y2; row++) {
+                    for (int d = row * pixels.width + x1, end = row * pixels.width + x2; d < end; d++) {
+                        dst[d] = color;
+                    }
+                }
+            } else if ((color >>> 24) != 0) {
+                for (int row = y1; row < y2; row++) {
+                    for (int d = row * pixels.width + x1, end = row * pixels.width + x2; d < end; d++) {
+                        dst[d] = PixelBuffer.blend(color, dst[d]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws the particles with Java2D, for render targets whose pixels can't be drawn into directly.
+     * @param graphics The graphics to draw with.
+     */
+    void draw(Graphics2D graphics) {
+        for (int i = 0; i < count; i++) {
+            int px = (int)Math.floor(x[i]);
+            int py = (int)Math.floor(y[i]);
+            if (texture != null) {
+                px -= texture.width / 2;
+                py -= texture.height / 2;
+                graphics.drawImage(texture.image, px, py, px + texture.width, py + texture.height, texture.x, texture.y, texture.x + texture.width, texture.y + texture.height, null);
+            } else {
+                graphics.setColor(getColorObject(getColor(i)));
+                graphics.fillRect(px - size / 2, py - size / 2, size, size);
+            }
+        }
+    }
+
+    /**
+     * @return The particle's color, with its alpha faded by age if fading is enabled.
+     */
+    private int getColor(int i) {
+        int color = colors[i];
+        if (fade) {
+            int alpha = (int)((color >>> 24) * Math.max(0, 1 - age[i] / lifetime[i]));
+            color = (alpha << 24) | (color & 0xFFFFFF);
+        }
+        return color;
+    }
+
+    /**
+     * @return A color object for a color, reusing the last one created for the same color where possible, since
+     *         particles usually share a few colors (and, as they fade, a few hundred alphas of them).
+     */
+    private java.awt.Color getColorObject(int color) {
+        int slot = (color * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(COLOR_CACHE_SIZE));
+        java.awt.Color cached = colorCache[slot];
+        if (cached == null || cached.getRGB() != color) {
+            cached = new java.awt.Color(color, true);
+            colorCache[slot] = cached;
+        }
+        return cached;
+    }
+
+    private static int premultiply(int color) {
+        int alpha = color >>> 24;
+        return (alpha << 24)
+            | (PixelBuffer.mul8(alpha, (color >> 16) & 0xFF) << 16)
+            | (PixelBuffer.mul8(alpha, (color >> 8) & 0xFF) << 8)
+            | PixelBuffer.mul8(alpha, color & 0xFF);
+    }
+
+}
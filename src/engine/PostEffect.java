@@ -0,0 +1,22 @@
+package engine;
+
+/**
+ * A full-screen effect that is applied to the finished frame with Engine.applyPostEffect(). See PostEffects for the
+ * built-in effects.
+ * Effects are applied a range of rows at a time, on several threads at once, so apply() must only write to the rows
+ * it is given and must not change any state that other calls could be reading.
+ */
+public interface PostEffect {
+
+    /**
+     * Processes a range of rows of the frame.
+     * @param src The pixels of the frame before the effect, in ARGB order. These must not be changed.
+     * @param dst The pixels of the frame after the effect, which the rows should be written into.
+     * @param width The width of the frame (in pixels).
+     * @param height The height of the frame (in pixels).
+     * @param y1 The first row to process.
+     * @param y2 The row after the last row to process.
+     */
+    void apply(int[] src, int[] dst, int width, int height, int y1, int y2);
+
+}
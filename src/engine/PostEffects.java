@@ -0,0 +1,254 @@
+package engine;
+
+/**
+ * The built-in post-processing effects, for use with Engine.applyPostEffect().
+ * These treat the frame as opaque (which it always is, since it's cleared to black) and leave it opaque.
+ */
+public final class PostEffects {
+
+    private PostEffects() {
+    }
+
+    /**
+     * Replaces exact colors with other colors, e.g. to flash enemies or swap a character's palette.
+     * @param from The colors to replace. Their alpha is ignored.
+     * @param to The colors to replace them with, in the same order. Their alpha is ignored.
+     * @return The effect.
+     */
+    public static PostEffect paletteSwap(Color[] from, Color[] to) {
+        if (from.length != to.length) {
+            throw new Error("Palettes must be the same length: " + from.length + " and " + to.length);
+        }
+
+        // Build an open addressing hash table, which is faster to look every pixel up in than a HashMap:
+        int capacity = Integer.highestOneBit(Math.max(4, from.length * 4) - 1) << 1;
+        int shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        int[] keys = new int[capacity];
+        int[] values = new int[capacity];
+        boolean[] used = new boolean[capacity];
+        for (int i = 0; i < from.length; i++) {
+            int key = from[i].getARGB() & 0xFFFFFF;
+            int slot = (key * 0x9E3779B9) >>> shift;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            used[slot] = true;
+            keys[slot] = key;
+            values[slot] = 0xFF000000 | to[i].getARGB();
+        }
+
+        return (src, dst, width, height, y1, y2) -> {
+            // Neighboring pixels are usually the same color, so remember the last one that was looked up:
+            int lastKey = -1;
+            int lastColor = 0;
+            for (int i = y1 * width, end = y2 * width; i < end; i++) {
+                int key = src[i] & 0xFFFFFF;
+                if (key != lastKey) {
+                    lastKey = key;
+                    lastColor = 0xFF000000 | key;
+                    for (int slot = (key * 0x9E3779B9) >>> shift; used[slot]; slot = (slot + 1) & (capacity - 1)) {
+                        if (keys[slot] == key) {
+                            lastColor = values[slot];
+                            break;
+                        }
+                    }
+                }
+                dst[i] = lastColor;
+            }
+        };
+    }
+
+    /**
+     * Adjusts the colors of the whole frame.
+     * @param brightness The amount added to every channel, between -1 and 1. Zero leaves the frame unchanged.
+     * @param contrast How much the channels are scaled away from middle gray. One leaves the frame unchanged.
+     * @param saturation How much colors are scaled away from gray. Zero makes the frame grayscale, and one leaves the
+     *                   frame unchanged.
+     * @return The effect.
+     */
+    public static PostEffect colorGrade(float brightness, float contrast, float saturation) {
+        // Everything is done in 8.8 fixed point without any branches or table lookups, so that the JIT compiler can
+        // process several pixels at once with SIMD instructions:
+        int scale = Math.round(Math.max(0, saturation) * 256);
+        int gain = Math.round(Math.max(0, contrast) * 256);
+        int offset = Math.round((127.5f - 127.5f * contrast + 255 * brightness) * 256) + 128;
+
+        if (scale == 256) {
+            // The JIT compiler only uses SIMD instructions for this loop when it doesn't mix the channels together:
+            return (src, dst, width, height, y1, y2) -> {
+                for (int i = y1 * width, end = y2 * width; i < end; i++) {
+                    int color = src[i];
+                    int r = clamp((((color >> 16) & 0xFF) * gain + offset) >> 8);
+                    int g = clamp((((color >> 8) & 0xFF) * gain + offset) >> 8);
+                    int b = clamp(((color & 0xFF) * gain + offset) >> 8);
+                    dst[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+                }
+            };
+        }
+
+        return (src, dst, width, height, y1, y2) -> {
+            for (int i = y1 * width, end = y2 * width; i < end; i++) {
+                int color = src[i];
+                int r = (color >> 16) & 0xFF;
+                int g = (color >> 8) & 0xFF;
+                int b = color & 0xFF;
+
+                // Scale each channel's distance from the pixel's luma, and then from middle gray:
+                int luma = (r * 77 + g * 150 + b * 29) >> 8;
+                r = Math.max(0, Math.min(255, ((luma + (((r - luma) * scale) >> 8)) * gain + offset) >> 8));
+                g = Math.max(0, Math.min(255, ((luma + (((g - luma) * scale) >> 8)) * gain + offset) >> 8));
+                b = Math.max(0, Math.min(255, ((luma + (((b - luma) * scale) >> 8)) * gain + offset) >> 8));
+                dst[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        };
+    }
+
+    /**
+     * @return The value clamped between 0 and 255. This uses bit tricks instead of Math.min() and Math.max(), which
+     *         stop the JIT compiler from using SIMD instructions.
+     */
+    private static int clamp(int value) {
+        value &= ~(value >> 31);
+        return (value | ((255 - value) >> 31)) & 0xFF;
+    }
+
+    /**
+     * Blends the whole frame towards a color, e.g. to flash the screen red when the player is hit.
+     * @param color The color to blend towards. Its alpha is ignored.
+     * @param amount How far to blend, between 0 (unchanged) and 1 (entirely the color).
+     * @return The effect.
+     */
+    public static PostEffect tint(Color color, float amount) {
+        int tint = color.getARGB();
+        int tintR = (tint >> 16) & 0xFF;
+        int tintG = (tint >> 8) & 0xFF;
+        int tintB = tint & 0xFF;
+        int weight = Math.round(Math.max(0, Math.min(1, amount)) * 256);
+
+        return (src, dst, width, height, y1, y2) -> {
+            for (int i = y1 * width, end = y2 * width; i < end; i++) {
+                int pixel = src[i];
+                int r = (pixel >> 16) & 0xFF;
+                int g = (pixel >> 8) & 0xFF;
+                int b = pixel & 0xFF;
+                r += ((tintR - r) * weight) >> 8;
+                g += ((tintG - g) * weight) >> 8;
+                b += ((tintB - b) * weight) >> 8;
+                dst[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        };
+    }
+
+    /**
+     * Darkens every other row of pixels, like the scanlines of an old CRT screen.
+     * @param darkness How much to darken the odd rows, between 0 (unchanged) and 1 (black).
+     * @return The effect.
+     */
+    public static PostEffect scanlines(float darkness) {
+        int scale = Math.round((1 - Math.max(0, Math.min(1, darkness))) * 256);
+
+        return (src, dst, width, height, y1, y2) -> {
+            for (int y = y1; y < y2; y++) {
+                int start = y * width;
+                if ((y & 1) == 0) {
+                    System.arraycopy(src, start, dst, start, width);
+                    continue;
+                }
+                for (int i = start, end = start + width; i < end; i++) {
+                    int color = src[i];
+                    int r = (((color >> 16) & 0xFF) * scale) >> 8;
+                    int g = (((color >> 8) & 0xFF) * scale) >> 8;
+                    int b = ((color & 0xFF) * scale) >> 8;
+                    dst[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+                }
+            }
+        };
+    }
+
+    /**
+     * Blurs the whole frame by averaging each pixel with the pixels in a square around it. Pixels beyond the edges
+     * of the frame are treated as copies of the nearest edge pixel.
+     * @param radius The distance (in pixels) from each pixel to the edges of the square, between 0 and 31.
+     * @return The effect.
+     */
+    public static PostEffect boxBlur(int radius) {
+        if (radius < 0 || radius > 31) {
+            throw new Error("Invalid blur radius: " + radius);
+        }
+        int size = radius * 2 + 1;
+        int area = size * size;
+
+        // Dividing by the area is done by multiplying by its reciprocal, rounding to the nearest value:
+        long reciprocal = (1L << 32) / area + 1;
+        long half = area / 2;
+
+        return (src, dst, width, height, y1, y2) -> {
+            // The sums of all three channels are packed into a long, 22 bits apart (20 for red), so that they're added
+            // at once. A square of up to 63x63 white pixels fits in 20 bits, which is what limits the radius.
+            // Sum each column over the rows around the first row, and then slide the sums down one row at a time:
+            long[] columns = new long[width];
+            for (int k = y1 - radius; k <= y1 + radius; k++) {
+                addRow(src, width, Math.max(0, Math.min(height - 1, k)), columns, 1);
+            }
+
+            for (int y = y1; y < y2; y++) {
+                // Sum the column sums across each square, and then slide the square along the row:
+                long sum = 0;
+                for (int k = -radius; k <= radius; k++) {
+                    sum += columns[Math.max(0, Math.min(width - 1, k))];
+                }
+                int row = y * width;
+                int x = 0;
+                for (int end = Math.min(width, radius); x < end; x++) {
+                    dst[row + x] = average(sum, reciprocal, half);
+                    sum += columns[Math.min(width - 1, x + radius + 1)] - columns[0];
+                }
+                for (int end = width - radius - 1; x < end; x++) {
+                    dst[row + x] = average(sum, reciprocal, half);
+                    sum += columns[x + radius + 1] - columns[x - radius];
+                }
+                for (; x < width; x++) {
+                    dst[row + x] = average(sum, reciprocal, half);
+                    sum += columns[width - 1] - columns[Math.max(0, x - radius)];
+                }
+
+                if (y + 1 < y2) {
+                    slideRows(src, width, Math.min(height - 1, y + radius + 1), Math.max(0, y - radius), columns);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return The color of a pixel from the packed sums of the channels around it.
+     */
+    private static int average(long sum, long reciprocal, long half) {
+        return 0xFF000000
+            | (int)((((sum >>> 44) + half) * reciprocal) >>> 32) << 16
+            | (int)(((((sum >>> 22) & 0x3FFFFF) + half) * reciprocal) >>> 32) << 8
+            | (int)((((sum & 0x3FFFFF) + half) * reciprocal) >>> 32);
+    }
+
+    private static void addRow(int[] src, int width, int y, long[] columns, int sign) {
+        for (int x = 0, i = y * width; x < width; x++, i++) {
+            columns[x] += sign * pack(src[i]);
+        }
+    }
+
+    /**
+     * Adds one row to the packed column sums and removes another.
+     */
+    private static void slideRows(int[] src, int width, int added, int removed, long[] columns) {
+        for (int x = 0, a = added * width, r = removed * width; x < width; x++, a++, r++) {
+            columns[x] += pack(src[a]) - pack(src[r]);
+        }
+    }
+
+    /**
+     * @return The channels of a color, 22 bits apart.
+     */
+    private static long pack(int color) {
+        return (((long)color & 0xFF0000) << 28) | ((color & 0xFF00L) << 14) | (color & 0xFF);
+    }
+
+}
@@ -0,0 +1,88 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Applies a frame's post-processing effects to the finished frame. Each effect reads the result of the previous one
+ * from one buffer and writes into another, with its rows split between every CPU core.
+ */
+final class PostProcessor {
+
+    // The number of rows processed by each task, which is enough to make the cost of a task negligible:
+    private static final int ROWS_PER_TASK = 16;
+
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+    private final ArrayList<PostEffect> effects = new ArrayList<PostEffect>();
+    private int[] scratch = new int[0];
+
+    void add(PostEffect effect) {
+        effects.add(effect);
+    }
+
+    /**
+     * Applies all of the effects added since the last call to an image's pixels, and clears them.
+     * @param pixels The pixels to process, which are replaced by the result.
+     */
+    void process(PixelBuffer pixels) {
+        if (effects.isEmpty()) {
+            return;
+        }
+        if (scratch.length != pixels.pixels.length) {
+            scratch = new int[pixels.pixels.length];
+        }
+
+        int[] src = pixels.pixels;
+        int[] dst = scratch;
+        for (PostEffect effect : effects) {
+            if (pool.getParallelism() > 1) {
+                pool.invoke(new ProcessTask(effect, src, dst, pixels.width, pixels.height, 0, pixels.height));
+            } else {
+                effect.apply(src, dst, pixels.width, pixels.height, 0, pixels.height);
+            }
+            int[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+
+        // Copy the result back if it ended up in the scratch buffer:
+        if (src != pixels.pixels) {
+            System.arraycopy(src, 0, pixels.pixels, 0, src.length);
+        }
+        effects.clear();
+    }
+
+    /**
+     * Applies an effect to a range of rows, splitting the range in half until each task has only a few rows.
+     */
+    @SuppressWarnings("serial")
+    private static final class ProcessTask extends RecursiveAction {
+
+        private final PostEffect effect;
+        private final int[] src, dst;
+        private final int width, height, y1, y2;
+
+        ProcessTask(PostEffect effect, int[] src, int[] dst, int width, int height, int y1, int y2) {
+            this.effect = effect;
+            this.src = src;
+            this.dst = dst;
+            this.width = width;
+            this.height = height;
+            this.y1 = y1;
+            this.y2 = y2;
+        }
+
+        @Override
+        protected void compute() {
+            if (y2 - y1 <= ROWS_PER_TASK) {
+                effect.apply(src, dst, width, height, y1, y2);
+            } else {
+                int middle = (y1 + y2) / 2;
+                invokeAll(new ProcessTask(effect, src, dst, width, height, y1, middle), new ProcessTask(effect, src, dst, width, height, middle, y2));
+            }
+        }
+
+    }
+
+}
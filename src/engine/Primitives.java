@@ -0,0 +1,271 @@
+package engine;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Draws large numbers of lines, rectangles and circles at once. Shapes are grouped by color so that Java2D's color
+ * only changes once per group. Filled rectangles are filled straight into the render target's pixels, and so are
+ * small circles, by blending a coverage mask that Java2D rasterized once for each size.
+ */
+final class Primitives {
+
+    // Circles up to this diameter (in pixels) are drawn from cached masks:
+    private static final int MAX_MASK_SIZE = 64;
+
+    /**
+     * The antialiased coverage of a circle, rasterized by Java2D with its top left corner at (1, 1).
+     */
+    private static final class Mask {
+        final int size;
+        final byte[] coverage;
+
+        Mask(int size, byte[] coverage) {
+            this.size = size;
+            this.coverage = coverage;
+        }
+    }
+
+    // The masks for each size of filled and outlined circle:
+    private static final Mask[] filledMasks = new Mask[MAX_MASK_SIZE + 1];
+    private static final Mask[] outlineMasks = new Mask[MAX_MASK_SIZE + 1];
+
+    private Primitives() {
+    }
+
+    /**
+     * @return The color of a shape, which is the only color if there is just one.
+     */
+    private static int getColor(int[] colors, int index) {
+        return colors[(colors.length == 1) ? 0 : index];
+    }
+
+    /**
+     * @return The indices of the shapes, sorted by color and then by index.
+     */
+    private static long[] groupByColor(int[] colors, int count) {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = ((long)getColor(colors, i) << 32) | i;
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Fills rectangles straight into the pixels of a render target, with the same results as Graphics2D.fillRect().
+     * @param pixels The pixels to draw into.
+     * @param offsetX The number of pixels to move the rectangles by along the x axis.
+     * @param offsetY The number of pixels to move the rectangles by along the y axis.
+     * @param bounds The x, y, width and height of each rectangle.
+     * @param colors The non-premultiplied ARGB color of each rectangle, or a single color for all of them.
+     * @param count The number of rectangles.
+     */
+    static void fillRects(PixelBuffer pixels, int offsetX, int offsetY, float[] bounds, int[] colors, int count) {
+        int[] dst = pixels.pixels;
+        for (int i = 0; i < count; i++) {
+            int x = (int)bounds[i * 4] + offsetX;
+            int y = (int)bounds[i * 4 + 1] + offsetY;
+            int x1 = Math.max(x, pixels.clipX1);
+            int y1 = Math.max(y, pixels.clipY1);
+            int x2 = Math.min(x + (int)bounds[i * 4 + 2], pixels.clipX2);
+            int y2 = Math.min(y + (int)bounds[i * 4 + 3], pixels.clipY2);
+            if (x1 >= x2 || y1 >= y2) {
+                continue;
+            }
+
+            int color = getColor(colors, i);
+            int alpha = color >>> 24;
+            if (alpha == 0xFF) {
+                for (int row = y1; row < y2; row++) {
+                    Arrays.fill(dst, row * pixels.width + x1, row * pixels.width + x2, color);
+                }
+            } else if (alpha != 0) {
+                int premultiplied = (alpha << 24)
+                    | (PixelBuffer.mul8(alpha, (color >> 16) & 0xFF) << 16)
+                    | (PixelBuffer.mul8(alpha, (color >> 8) & 0xFF) << 8)
+                    | PixelBuffer.mul8(alpha, color & 0xFF);
+                for (int row = y1; row < y2; row++) {
+                    for (int d = row * pixels.width + x1, end = row * pixels.width + x2; d < end; d++) {
+                        dst[d] = PixelBuffer.blend(premultiplied, dst[d]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Rasterizes the masks for any circles that can be drawn from masks. This has to be done before the circles are
+     * drawn from other threads, which only ever read the masks.
+     * @param circles The center x, center y and radius of each circle.
+     * @param count The number of circles.
+     * @param filled Whether or not the circles are filled.
+     */
+    static void prepareCircleMasks(float[] circles, int count, boolean filled) {
+        Mask[] masks = filled ? filledMasks : outlineMasks;
+        for (int i = 0; i < count; i++) {
+            int size = (int)(circles[i * 3 + 2] * 2);
+            if (size > 0 && size <= MAX_MASK_SIZE && masks[size] == null) {
+                // Draw the circle in white with the same hints as the render target, and keep its alpha as coverage:
+                int maskSize = size + 3;
+                BufferedImage image = new BufferedImage(maskSize, maskSize, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D graphics = image.createGraphics();
+                graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.setColor(java.awt.Color.WHITE);
+                if (filled) {
+                    graphics.fillOval(1, 1, size, size);
+                } else {
+                    graphics.drawOval(1, 1, size, size);
+                }
+                graphics.dispose();
+                byte[] coverage = new byte[maskSize * maskSize];
+                for (int v = 0; v < maskSize; v++) {
+                    for (int u = 0; u < maskSize; u++) {
+                        coverage[v * maskSize + u] = (byte)(image.getRGB(u, v) >>> 24);
+                    }
+                }
+                masks[size] = new Mask(maskSize, coverage);
+            }
+        }
+    }
+
+    /**
+     * Draws circles straight into the pixels of a render target from their masks, falling back to Java2D for circles
+     * that are too large to have masks. The masks must have been prepared with prepareCircleMasks().
+     * @param graphics The graphics to draw large circles with.
+     * @param pixels The pixels to draw into.
+     * @param offsetX The number of pixels to move the circles by along the x axis.
+     * @param offsetY The number of pixels to move the circles by along the y axis.
+     */
+    static void drawCircles(Graphics2D graphics, PixelBuffer pixels, int offsetX, int offsetY, float[] circles, int[] colors, int count, boolean filled) {
+        Mask[] masks = filled ? filledMasks : outlineMasks;
+        int[] dst = pixels.pixels;
+        int[] table = new int[256];
+        int tableColor = 0;
+        boolean tableValid = false;
+        for (int i = 0; i < count; i++) {
+            float radius = circles[i * 3 + 2];
+            int size = (int)(radius * 2);
+            int x = (int)(circles[i * 3] - radius);
+            int y = (int)(circles[i * 3 + 1] - radius);
+            if (size > MAX_MASK_SIZE) {
+                graphics.setColor(new java.awt.Color(getColor(colors, i), true));
+                if (filled) {
+                    graphics.fillOval(x, y, size, size);
+                } else {
+                    graphics.drawOval(x, y, size, size);
+                }
+                continue;
+            }
+            if (size <= 0) {
+                continue;
+            }
+
+            // Premultiply the color by each coverage value:
+            int color = getColor(colors, i);
+            if (!tableValid || color != tableColor) {
+                int alpha = color >>> 24;
+                for (int coverage = 0; coverage < 256; coverage++) {
+                    int a = PixelBuffer.mul8(coverage, alpha);
+                    table[coverage] = (a << 24) | (PixelBuffer.mul8(a, (color >> 16) & 0xFF) << 16) | (PixelBuffer.mul8(a, (color >> 8) & 0xFF) << 8) | PixelBuffer.mul8(a, color & 0xFF);
+                }
+                if (alpha == 0xFF) {
+                    table[255] = color;
+                }
+                tableColor = color;
+                tableValid = true;
+            }
+
+            // Clip the mask to the pixels and blend it in:
+            Mask mask = masks[size];
+            int mx = x - 1 + offsetX;
+            int my = y - 1 + offsetY;
+            int x1 = Math.max(mx, pixels.clipX1);
+            int y1 = Math.max(my, pixels.clipY1);
+            int x2 = Math.min(mx + mask.size, pixels.clipX2);
+            int y2 = Math.min(my + mask.size, pixels.clipY2);
+            for (int py = y1; py < y2; py++) {
+                int s = (py - my) * mask.size + (x1 - mx);
+                for (int d = py * pixels.width + x1, end = py * pixels.width + x2; d < end; d++, s++) {
+                    int coverage = mask.coverage[s] & 0xFF;
+                    if (coverage != 0) {
+                        dst[d] = PixelBuffer.blend(table[coverage], dst[d]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws rectangles, setting the color once per group. The parameters are the same as fillRects().
+     */
+    static void drawRects(Graphics2D graphics, float[] bounds, int[] colors, int count, boolean filled) {
+        long[] keys = groupByColor(colors, count);
+        int current = 0;
+        for (int k = 0; k < count; k++) {
+            int color = (int)(keys[k] >>> 32);
+            if (k == 0 || color != current) {
+                graphics.setColor(new java.awt.Color(color, true));
+                current = color;
+            }
+            int i = (int)keys[k];
+            if (filled) {
+                graphics.fillRect((int)bounds[i * 4], (int)bounds[i * 4 + 1], (int)bounds[i * 4 + 2], (int)bounds[i * 4 + 3]);
+            } else {
+                graphics.drawRect((int)bounds[i * 4], (int)bounds[i * 4 + 1], (int)bounds[i * 4 + 2], (int)bounds[i * 4 + 3]);
+            }
+        }
+    }
+
+    /**
+     * Draws lines, setting the color once per group.
+     * @param graphics The graphics to draw with.
+     * @param points The start x, start y, end x and end y of each line.
+     * @param colors The non-premultiplied ARGB color of each line, or a single color for all of them.
+     * @param count The number of lines.
+     */
+    static void drawLines(Graphics2D graphics, float[] points, int[] colors, int count) {
+        long[] keys = groupByColor(colors, count);
+        int current = 0;
+        for (int k = 0; k < count; k++) {
+            int color = (int)(keys[k] >>> 32);
+            if (k == 0 || color != current) {
+                graphics.setColor(new java.awt.Color(color, true));
+                current = color;
+            }
+            int i = (int)keys[k];
+            graphics.drawLine((int)points[i * 4], (int)points[i * 4 + 1], (int)points[i * 4 + 2], (int)points[i * 4 + 3]);
+        }
+    }
+
+    /**
+     * Draws circles, setting the color once per group.
+     * @param graphics The graphics to draw with.
+     * @param circles The center x, center y and radius of each circle.
+     * @param colors The non-premultiplied ARGB color of each circle, or a single color for all of them.
+     * @param count The number of circles.
+     * @param filled Whether or not the circles should be filled.
+     */
+    static void drawCircles(Graphics2D graphics, float[] circles, int[] colors, int count, boolean filled) {
+        long[] keys = groupByColor(colors, count);
+        int current = 0;
+        for (int k = 0; k < count; k++) {
+            int color = (int)(keys[k] >>> 32);
+            if (k == 0 || color != current) {
+                graphics.setColor(new java.awt.Color(color, true));
+                current = color;
+            }
+            int i = (int)keys[k];
+            float radius = circles[i * 3 + 2];
+            int size = (int)(radius * 2);
+            if (filled) {
+                graphics.fillOval((int)(circles[i * 3] - radius), (int)(circles[i * 3 + 1] - radius), size, size);
+            } else {
+                graphics.drawOval((int)(circles[i * 3] - radius), (int)(circles[i * 3 + 1] - radius), size, size);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the drawing work submitted during a frame, for Engine.getRenderStats(). Draws are counted on the game's
+ * thread when they are submitted, but state changes are counted when they happen, which can be on several threads at
+ * once with tiled rendering.
+ */
+final class RenderCounters {
+
+    // The colors of the overdraw heatmap, for pixels drawn 0, 1, 2 ... times:
+    private static final int[] HEAT_COLORS = {
+        0xFF000000, 0xFF000090, 0xFF0050FF, 0xFF00C060, 0xFFB0E000, 0xFFFFB000, 0xFFFF5000, 0xFFFF0000, 0xFFFFFFFF,
+    };
+
+    int textureDraws, resizableTextureDraws, stringDraws, primitiveDraws, particleDraws, culledDraws;
+    long pixels;
+    final LongAdder interpolationChanges = new LongAdder();
+    final LongAdder transformChanges = new LongAdder();
+
+    // The number of times each pixel of the screen was drawn this frame, or null if the heatmap is disabled:
+    private int[] overdraw;
+    private int overdrawWidth, overdrawHeight;
+
+    void reset() {
+        textureDraws = 0;
+        resizableTextureDraws = 0;
+        stringDraws = 0;
+        primitiveDraws = 0;
+        particleDraws = 0;
+        culledDraws = 0;
+        pixels = 0;
+        interpolationChanges.reset();
+        transformChanges.reset();
+        if (overdraw != null) {
+            Arrays.fill(overdraw, 0);
+        }
+    }
+
+    RenderStats snapshot(int screenPixels) {
+        return new RenderStats(textureDraws, resizableTextureDraws, stringDraws, primitiveDraws, particleDraws, culledDraws,
+            interpolationChanges.intValue(), transformChanges.intValue(), pixels, (float)pixels / screenPixels);
+    }
+
+    /**
+     * @param width The width of the screen, or zero to disable the heatmap.
+     * @param height The height of the screen, or zero to disable the heatmap.
+     */
+    void setHeatmapSize(int width, int height) {
+        overdraw = (width > 0 && height > 0) ? new int[width * height] : null;
+        overdrawWidth = width;
+        overdrawHeight = height;
+    }
+
+    boolean isHeatmapEnabled() {
+        return overdraw != null;
+    }
+
+    /**
+     * Counts the pixels in a rectangle of a render target as drawn.
+     * @param x1 The left edge of the rectangle, in render target pixels.
+     * @param y1 The top edge of the rectangle, in render target pixels.
+     * @param x2 The right edge of the rectangle, in render target pixels.
+     * @param y2 The bottom edge of the rectangle, in render target pixels.
+     * @param width The width of the render target.
+     * @param height The height of the render target.
+     * @param screen Whether or not the render target is the screen, which is the only one the heatmap covers.
+     */
+    void fill(int x1, int y1, int x2, int y2, int width, int height, boolean screen) {
+        x1 = Math.max(0, x1);
+        y1 = Math.max(0, y1);
+        x2 = Math.min(width, x2);
+        y2 = Math.min(height, y2);
+        if (x1 >= x2 || y1 >= y2) {
+            return;
+        }
+        pixels += (long)(x2 - x1) * (y2 - y1);
+        if (screen && overdraw != null && width == overdrawWidth && height == overdrawHeight) {
+            for (int y = y1; y < y2; y++) {
+                for (int i = y * width + x1, end = y * width + x2; i < end; i++) {
+                    overdraw[i]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the screen's pixels with the overdraw heatmap, if it's enabled.
+     */
+    void drawHeatmap(int[] pixels) {
+        if (overdraw == null || pixels.length != overdraw.length) {
+            return;
+        }
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = HEAT_COLORS[Math.min(overdraw[i], HEAT_COLORS.length - 1)];
+        }
+    }
+
+}
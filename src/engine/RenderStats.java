@@ -0,0 +1,85 @@
+package engine;
+
+/**
+ * How much drawing work a frame submitted, from Engine.getRenderStats(). Useful for setting content budgets and for
+ * catching a level that suddenly draws twice as much as it used to.
+ */
+public class RenderStats {
+
+    /**
+     * The number of textures drawn, including tile map chunks.
+     */
+    public final int textureDraws;
+
+    /**
+     * The number of resizable textures drawn.
+     */
+    public final int resizableTextureDraws;
+
+    /**
+     * The number of strings drawn.
+     */
+    public final int stringDraws;
+
+    /**
+     * The number of lines, rectangles and circles drawn, including each shape drawn by the bulk drawing functions.
+     */
+    public final int primitiveDraws;
+
+    /**
+     * The number of particles drawn.
+     */
+    public final int particleDraws;
+
+    /**
+     * The number of draws that were skipped because they were entirely outside of the view.
+     */
+    public final int culledDraws;
+
+    /**
+     * The number of times the interpolation mode that textures are drawn with had to be changed.
+     */
+    public final int interpolationChanges;
+
+    /**
+     * The number of times the transform that things are drawn with had to be changed (e.g. to draw a rotated texture).
+     */
+    public final int transformChanges;
+
+    /**
+     * An estimate of the number of pixels drawn, counting each draw as the bounding box of what it covers.
+     */
+    public final long pixelsFilled;
+
+    /**
+     * The estimated number of times each pixel of the screen was drawn on average (pixelsFilled divided by the number
+     * of pixels on the screen).
+     */
+    public final float overdraw;
+
+    RenderStats(int textureDraws, int resizableTextureDraws, int stringDraws, int primitiveDraws, int particleDraws, int culledDraws, int interpolationChanges, int transformChanges, long pixelsFilled, float overdraw) {
+        this.textureDraws = textureDraws;
+        this.resizableTextureDraws = resizableTextureDraws;
+        this.stringDraws = stringDraws;
+        this.primitiveDraws = primitiveDraws;
+        this.particleDraws = particleDraws;
+        this.culledDraws = culledDraws;
+        this.interpolationChanges = interpolationChanges;
+        this.transformChanges = transformChanges;
+        this.pixelsFilled = pixelsFilled;
+        this.overdraw = overdraw;
+    }
+
+    /**
+     * @return The total number of draw calls, counting each shape, particle and text string as one.
+     */
+    public int getDrawCount() {
+        return textureDraws + resizableTextureDraws + stringDraws + primitiveDraws + particleDraws;
+    }
+
+    public String toString() {
+        return String.format("%d textures, %d resizable textures, %d strings, %d primitives, %d particles, %d culled, %d interpolation changes, %d transform changes, %d pixels (%.2fx overdraw)",
+            textureDraws, resizableTextureDraws, stringDraws, primitiveDraws, particleDraws, culledDraws, interpolationChanges, transformChanges, pixelsFilled, overdraw);
+    }
+
+}
@@ -0,0 +1,38 @@
+package engine;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * An offscreen image that can be drawn into with Engine.setRenderTarget() and then drawn like any other texture.
+ * Anything that doesn't change every frame (e.g. a static background, a minimap or a UI layer) can be drawn into a
+ * render target once and then drawn with a single call each frame.
+ * A render target keeps its contents until it is drawn into again, so it isn't cleared at the start of each frame.
+ */
+public class RenderTarget extends Texture {
+
+    final Graphics2D graphics;
+    final PixelBuffer pixels;
+
+    /**
+     * Creates a transparent render target.
+     * @param width The width of the render target (in pixels).
+     * @param height The height of the render target (in pixels).
+     */
+    public RenderTarget(int width, int height) {
+        super(createImage(width, height));
+        BufferedImage bufferedImage = (BufferedImage)image;
+        graphics = bufferedImage.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        pixels = new PixelBuffer(bufferedImage);
+    }
+
+    private static BufferedImage createImage(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new Error("Invalid render target size: " + width + "x" + height);
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+    }
+
+}
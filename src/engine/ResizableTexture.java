@@ -4,10 +4,13 @@ import java.awt.*;
 
 public class ResizableTexture {
     
-    protected final Image image;
+    protected Image image;
     public final int width, height;
     protected final int leftOffset, rightOffset, topOffset, bottomOffset;
 
+    // Incremented whenever the texture's image is replaced, so that anything pre-drawn from it can be drawn again:
+    int version;
+
     public ResizableTexture(Image image, int leftOffset, int rightOffset, int topOffset, int bottomOffset) {
         this.image = image;
         this.width = image.getWidth(null);
@@ -18,4 +21,12 @@ public class ResizableTexture {
         this.bottomOffset = bottomOffset;
     }
 
+    /**
+     * Replaces the texture's image with one of the same size (e.g. when its file has been changed).
+     */
+    void replaceImage(Image image) {
+        this.image = image;
+        version++;
+    }
+
 }
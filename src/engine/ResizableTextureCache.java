@@ -0,0 +1,126 @@
+package engine;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps resizable textures that have been drawn at the same size on more than one frame pre-drawn at that size, so
+ * that they can be drawn with a single unscaled copy instead of nine scaled ones. Sizes that only last for a single
+ * frame (e.g. a panel that is animating open) are never cached. The least recently drawn entries are dropped once
+ * the cache holds more than a set number of pixels.
+ */
+final class ResizableTextureCache {
+
+    private static final class Key {
+        ResizableTexture texture;
+        int version;
+        int width, height;
+
+        Key(ResizableTexture texture, int width, int height) {
+            this.texture = texture;
+            this.version = (texture != null) ? texture.version : 0;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key)other;
+            return key.texture == texture && key.version == version && key.width == width && key.height == height;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((System.identityHashCode(texture) * 31 + version) * 31 + width) * 31 + height;
+        }
+    }
+
+    // The number of sizes that are remembered while waiting to see whether they are drawn again on a later frame:
+    private static final int MAX_CANDIDATES = 256;
+
+    private int maxPixels = 1 << 20;
+    private int pixels;
+
+    // Looking entries up with a reused key avoids allocating on every draw:
+    private final Key lookup = new Key(null, 0, 0);
+
+    // The pre-drawn textures, with the least recently drawn first:
+    private final LinkedHashMap<Key, Texture> entries = new LinkedHashMap<Key, Texture>(16, 0.75f, true);
+
+    // The frame that each recently drawn size that isn't cached yet was first drawn on:
+    private final LinkedHashMap<Key, Long> candidates = new LinkedHashMap<Key, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+            return size() > MAX_CANDIDATES;
+        }
+    };
+
+    /**
+     * @param maxPixels The total number of pixels that cached textures may use. If zero, nothing is cached.
+     */
+    void setMaxPixels(int maxPixels) {
+        this.maxPixels = Math.max(0, maxPixels);
+        trim();
+    }
+
+    /**
+     * @param texture The resizable texture to draw.
+     * @param width The width to draw it at.
+     * @param height The height to draw it at.
+     * @param frame The number of the current frame.
+     * @return The texture pre-drawn at that size, or null if the size isn't worth caching (yet).
+     */
+    Texture get(ResizableTexture texture, int width, int height, long frame) {
+        lookup.texture = texture;
+        lookup.version = texture.version;
+        lookup.width = width;
+        lookup.height = height;
+        Texture cached = entries.get(lookup);
+        if (cached != null || width * height > maxPixels) {
+            lookup.texture = null;
+            return cached;
+        }
+
+        // Only cache sizes that are drawn again on a later frame:
+        Long firstFrame = candidates.get(lookup);
+        if (firstFrame == null || firstFrame == frame) {
+            if (firstFrame == null) {
+                candidates.put(new Key(texture, width, height), frame);
+            }
+            lookup.texture = null;
+            return null;
+        }
+        candidates.remove(lookup);
+        lookup.texture = null;
+
+        // Draw the texture at its new size, exactly as it would have been drawn into the render target:
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        Engine.drawResizableTexture(graphics, texture, 0, 0, width, height);
+        graphics.dispose();
+
+        cached = new Texture(image);
+        entries.put(new Key(texture, width, height), cached);
+        pixels += width * height;
+        trim();
+        return cached;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<Key, Texture>> iterator = entries.entrySet().iterator();
+        while (pixels > maxPixels && iterator.hasNext()) {
+            Map.Entry<Key, Texture> entry = iterator.next();
+            pixels -= entry.getKey().width * entry.getKey().height;
+            iterator.remove();
+        }
+    }
+
+}
@@ -1,13 +1,50 @@
 package engine;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import javax.sound.sampled.AudioFormat;
 
 public class Sound {
     
     protected final File file;
+
+    // The raw samples of a sound loaded from an asset archive, which has no file of its own:
+    AudioFormat format;
+    ByteBuffer samples;
+
+    // The samples copied into an array to open clips with, which is only done the first time the sound is played:
+    private byte[] sampleArray;
     
     public Sound(File file) {
         this.file = file;
+        this.format = null;
+        this.samples = null;
+    }
+
+    Sound(AudioFormat format, ByteBuffer samples) {
+        this.file = null;
+        this.format = format;
+        this.samples = samples;
+    }
+
+    /**
+     * @return The samples of a sound loaded from an asset archive, as an array.
+     */
+    synchronized byte[] getSampleArray() {
+        if (sampleArray == null) {
+            sampleArray = new byte[samples.remaining()];
+            samples.duplicate().get(sampleArray);
+        }
+        return sampleArray;
+    }
+
+    /**
+     * Replaces the samples of a sound loaded from an asset archive (e.g. when its file has been changed).
+     */
+    synchronized void replaceSamples(AudioFormat format, byte[] samples) {
+        this.format = format;
+        this.samples = ByteBuffer.wrap(samples);
+        this.sampleArray = samples;
     }
 
 }
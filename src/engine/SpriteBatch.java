@@ -0,0 +1,92 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * Records texture draws so that they can be sorted by layer, texture and interpolation mode and then drawn together
+ * with as few graphics state changes as possible.
+ */
+final class SpriteBatch {
+
+    // Each draw is stored in primitive arrays rather than as an object, and sorted by a 64-bit key that packs
+    // together (from most to least significant) the layer, texture, interpolation mode, and submission order:
+    private static final int SEQUENCE_BITS = 24;
+    private static final int INTERPOLATION_BITS = 1;
+    private static final int TEXTURE_BITS = 22;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int MAX_SPRITES = 1 << SEQUENCE_BITS;
+    private static final InterpolationMode[] INTERPOLATION_MODES = InterpolationMode.values();
+
+    private int count;
+    private long[] keys = new long[1024];
+    private Texture[] textures = new Texture[1024];
+    private MirrorMode[] mirrors = new MirrorMode[1024];
+    private int[] rects = new int[1024 * 8];
+    private float[] rotations = new float[1024 * 3];
+
+    boolean active;
+    int layer;
+
+    /**
+     * Records a texture draw. The parameters are the same as for Engine.drawSprite().
+     */
+    void add(Texture texture, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, float rotation, float pivotX, float pivotY, MirrorMode mirror, InterpolationMode interpolationMode) {
+        if (count == MAX_SPRITES) {
+            throw new Error("Too many sprites in a single batch.");
+        }
+        if (count == textures.length) {
+            int capacity = count * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            textures = Arrays.copyOf(textures, capacity);
+            mirrors = Arrays.copyOf(mirrors, capacity);
+            rects = Arrays.copyOf(rects, capacity * 8);
+            rotations = Arrays.copyOf(rotations, capacity * 3);
+        }
+
+        long layerKey = (layer - (long)Short.MIN_VALUE) & 0xFFFF;
+        long textureKey = texture.id & ((1L << TEXTURE_BITS) - 1);
+        long interpolationKey = interpolationMode.ordinal();
+        keys[count] = (layerKey << (TEXTURE_BITS + INTERPOLATION_BITS + SEQUENCE_BITS))
+            | (textureKey << (INTERPOLATION_BITS + SEQUENCE_BITS))
+            | (interpolationKey << SEQUENCE_BITS)
+            | count;
+        textures[count] = texture;
+        mirrors[count] = mirror;
+        int r = count * 8;
+        rects[r] = dx1;
+        rects[r + 1] = dy1;
+        rects[r + 2] = dx2;
+        rects[r + 3] = dy2;
+        rects[r + 4] = sx1;
+        rects[r + 5] = sy1;
+        rects[r + 6] = sx2;
+        rects[r + 7] = sy2;
+        int f = count * 3;
+        rotations[f] = rotation;
+        rotations[f + 1] = pivotX;
+        rotations[f + 2] = pivotY;
+        count++;
+    }
+
+    /**
+     * Draws all of the recorded sprites in sorted order and clears the batch.
+     * Within a layer, sprites are grouped by texture, so overlapping sprites that use different textures in the same
+     * layer may not be drawn in the order they were submitted.
+     */
+    void flush() {
+        Arrays.sort(keys, 0, count);
+        for (int i = 0; i < count; i++) {
+            int index = (int)(keys[i] & SEQUENCE_MASK);
+            InterpolationMode interpolation = INTERPOLATION_MODES[(int)(keys[i] >>> SEQUENCE_BITS) & 1];
+            int r = index * 8;
+            int f = index * 3;
+            Engine.submitSprite(textures[index], rects[r], rects[r + 1], rects[r + 2], rects[r + 3], rects[r + 4], rects[r + 5], rects[r + 6], rects[r + 7],
+                rotations[f], rotations[f + 1], rotations[f + 2], mirrors[index], interpolation);
+        }
+
+        // Let go of the textures so that they can be garbage collected:
+        Arrays.fill(textures, 0, count, null);
+        count = 0;
+    }
+
+}
@@ -0,0 +1,181 @@
+package engine;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps rotated and mirrored sprites pre-drawn, with rotations snapped to a fixed number of angles, so that they can
+ * be drawn with a single unscaled copy instead of going through Java2D's transformed image pipeline. The least
+ * recently drawn variants are dropped once the cache holds more than a set number of pixels.
+ */
+final class SpriteVariantCache {
+
+    /**
+     * A pre-drawn sprite, and where it goes relative to the top left corner of the sprite's destination.
+     */
+    static final class Variant {
+        final Texture texture;
+        final int x, y;
+
+        Variant(Texture texture, int x, int y) {
+            this.texture = texture;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private static final class Key {
+        Texture texture;
+        int version;
+        int sx1, sy1, sx2, sy2, width, height, angle;
+        float pivotX, pivotY;
+        MirrorMode mirror;
+        InterpolationMode interpolationMode;
+
+        Key set(Texture texture, int sx1, int sy1, int sx2, int sy2, int width, int height, int angle, float pivotX, float pivotY, MirrorMode mirror, InterpolationMode interpolationMode) {
+            this.texture = texture;
+            this.version = texture.version;
+            this.sx1 = sx1;
+            this.sy1 = sy1;
+            this.sx2 = sx2;
+            this.sy2 = sy2;
+            this.width = width;
+            this.height = height;
+            this.angle = angle;
+            this.pivotX = pivotX;
+            this.pivotY = pivotY;
+            this.mirror = mirror;
+            this.interpolationMode = interpolationMode;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key)other;
+            return key.texture == texture && key.version == version && key.sx1 == sx1 && key.sy1 == sy1 && key.sx2 == sx2 && key.sy2 == sy2
+                && key.width == width && key.height == height && key.angle == angle && key.pivotX == pivotX
+                && key.pivotY == pivotY && key.mirror == mirror && key.interpolationMode == interpolationMode;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = System.identityHashCode(texture);
+            hash = hash * 31 + version;
+            hash = hash * 31 + sx1;
+            hash = hash * 31 + sy1;
+            hash = hash * 31 + sx2;
+            hash = hash * 31 + sy2;
+            hash = hash * 31 + width;
+            hash = hash * 31 + height;
+            hash = hash * 31 + angle;
+            hash = hash * 31 + Float.floatToIntBits(pivotX);
+            hash = hash * 31 + Float.floatToIntBits(pivotY);
+            hash = hash * 31 + mirror.ordinal();
+            return hash * 2 + interpolationMode.ordinal();
+        }
+    }
+
+    private int steps;
+    private int maxPixels;
+    private int pixels;
+
+    // Looking variants up with a reused key avoids allocating on every draw:
+    private final Key lookup = new Key();
+    private final AffineTransform scratch = new AffineTransform();
+
+    // The pre-drawn variants, with the least recently drawn first:
+    private final LinkedHashMap<Key, Variant> variants = new LinkedHashMap<Key, Variant>(16, 0.75f, true);
+
+    /**
+     * @param steps The number of angles that rotations are snapped to. If zero, the cache is disabled.
+     * @param maxPixels The total number of pixels that variants may use.
+     */
+    void configure(int steps, int maxPixels) {
+        if (steps != this.steps) {
+            variants.clear();
+            pixels = 0;
+        }
+        this.steps = Math.max(0, steps);
+        this.maxPixels = Math.max(0, maxPixels);
+        trim();
+    }
+
+    boolean isEnabled() {
+        return steps > 0;
+    }
+
+    /**
+     * @return The index of the nearest angle that the rotation snaps to, between 0 and the number of steps.
+     */
+    int snap(float rotation) {
+        return Math.floorMod(Math.round(rotation / 360 * steps), steps);
+    }
+
+    /**
+     * @param angle The snapped angle, from snap().
+     * @return The snapped angle (in degrees).
+     */
+    float getRotation(int angle) {
+        return angle * 360f / steps;
+    }
+
+    /**
+     * Finds or draws a variant of a sprite. The parameters are the same as Engine.drawSprite(), except that the
+     * rotation has been snapped and the destination is relative to the sprite's position.
+     * @return The variant, or null if it is too large to cache.
+     */
+    Variant get(Texture texture, int width, int height, int sx1, int sy1, int sx2, int sy2, int angle, float pivotX, float pivotY, MirrorMode mirror, InterpolationMode interpolationMode) {
+        Variant variant = variants.get(lookup.set(texture, sx1, sy1, sx2, sy2, width, height, angle, pivotX, pivotY, mirror, interpolationMode));
+        lookup.texture = null;
+        if (variant != null) {
+            return variant;
+        }
+
+        // Find the bounds of the rotated destination, leaving room for mirroring and filtering to spill over:
+        float rotation = getRotation(angle);
+        scratch.setToRotation(Math.toRadians(rotation), pivotX, pivotY);
+        double[] corners = { 0, 0, width, 0, 0, height, width, height };
+        scratch.transform(corners, 0, corners, 0, 4);
+        int x1 = (int)Math.floor(Math.min(Math.min(corners[0], corners[2]), Math.min(corners[4], corners[6]))) - 2;
+        int y1 = (int)Math.floor(Math.min(Math.min(corners[1], corners[3]), Math.min(corners[5], corners[7]))) - 2;
+        int x2 = (int)Math.ceil(Math.max(Math.max(corners[0], corners[2]), Math.max(corners[4], corners[6]))) + 2;
+        int y2 = (int)Math.ceil(Math.max(Math.max(corners[1], corners[3]), Math.max(corners[5], corners[7]))) + 2;
+        if ((x2 - x1) * (y2 - y1) > maxPixels) {
+            return null;
+        }
+
+        // Draw the sprite exactly as it would have been drawn into the render target, offset by a whole number of
+        // pixels so that it lines up with the same pixels:
+        BufferedImage image = new BufferedImage(x2 - x1, y2 - y1, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        AffineTransform base = AffineTransform.getTranslateInstance(-x1, -y1);
+        graphics.setTransform(base);
+        Engine.drawSprite(graphics, null, base, scratch, texture, 0, 0, width, height, sx1, sy1, sx2, sy2, rotation, pivotX, pivotY, mirror, interpolationMode);
+        graphics.dispose();
+
+        variant = new Variant(new Texture(image), x1, y1);
+        variants.put(new Key().set(texture, sx1, sy1, sx2, sy2, width, height, angle, pivotX, pivotY, mirror, interpolationMode), variant);
+        pixels += image.getWidth() * image.getHeight();
+        trim();
+        return variant;
+    }
+
+    private void trim() {
+        Iterator<Variant> iterator = variants.values().iterator();
+        while (pixels > maxPixels && iterator.hasNext()) {
+            Variant variant = iterator.next();
+            pixels -= variant.texture.width * variant.texture.height;
+            iterator.remove();
+        }
+    }
+
+}
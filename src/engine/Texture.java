@@ -1,18 +1,95 @@
 package engine;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Texture {
+
+    private static final AtomicInteger nextId = new AtomicInteger();
     
-    protected final Image image;
+    protected Image image;
+    protected final int id = nextId.getAndIncrement();
+    protected final int x, y;
     public final int width, height;
     public final Vector2 size;
 
+    // The raw pixels of the image, for drawing without Java2D, or null if the image isn't in a supported layout:
+    private int[] pixels;
+    private boolean pixelsChecked;
+
+    // Incremented whenever the texture's pixels change, so that anything pre-drawn from them can be drawn again:
+    int version;
+
     public Texture(Image image) {
+        this(image, 0, 0, image.getWidth(null), image.getHeight(null));
+    }
+
+    /**
+     * Creates a texture that refers to a region of a larger image, such as a page of a texture atlas.
+     * @param image The image that contains the texture.
+     * @param x The left edge of the region (in pixels).
+     * @param y The top edge of the region (in pixels).
+     * @param width The width of the region (in pixels).
+     * @param height The height of the region (in pixels).
+     */
+    public Texture(Image image, int x, int y, int width, int height) {
         this.image = image;
-        this.width = image.getWidth(null);
-        this.height = image.getHeight(null);
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
         this.size = new Vector2(width, height);
     }
 
+    /**
+     * Replaces the texture's image with one of the same size (e.g. when its file has been changed), so that everything
+     * that keeps a reference to the texture draws the new image.
+     */
+    void replaceImage(Image image) {
+        this.image = image;
+        pixels = null;
+        pixelsChecked = false;
+        version++;
+    }
+
+    /**
+     * @return The pixels of the texture's image in premultiplied ARGB order (or RGB if it is opaque), or null if the
+     *         image is stored some other way.
+     */
+    int[] getPixels() {
+        if (!pixelsChecked) {
+            if (image instanceof BufferedImage) {
+                BufferedImage bufferedImage = (BufferedImage)image;
+                if (bufferedImage.getType() == BufferedImage.TYPE_INT_ARGB_PRE || bufferedImage.getType() == BufferedImage.TYPE_INT_RGB) {
+                    pixels = ((DataBufferInt)bufferedImage.getRaster().getDataBuffer()).getData();
+                }
+            }
+            pixelsChecked = true;
+        }
+        return pixels;
+    }
+
+    /**
+     * @return Whether or not the texture's image has no alpha channel.
+     */
+    boolean isOpaque() {
+        return image instanceof BufferedImage && ((BufferedImage)image).getType() == BufferedImage.TYPE_INT_RGB;
+    }
+
+    /**
+     * @return The width of the texture's whole image, which may be larger than the texture.
+     */
+    int getImageWidth() {
+        return image.getWidth(null);
+    }
+
+    /**
+     * @return The height of the texture's whole image, which may be larger than the texture.
+     */
+    int getImageHeight() {
+        return image.getHeight(null);
+    }
+
 }
@@ -0,0 +1,289 @@
+package engine;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.List;
+import javax.imageio.ImageIO;
+
+/**
+ * A set of textures packed together into a few large images ("pages"). Drawing textures that share a page is faster
+ * than drawing the same number of separate textures, and is especially worthwhile for lots of small sprites.
+ */
+public class TextureAtlas {
+
+    private final HashMap<String, Texture> textures;
+    private final int pageCount;
+
+    private TextureAtlas(HashMap<String, Texture> textures, int pageCount) {
+        this.textures = textures;
+        this.pageCount = pageCount;
+    }
+
+    /**
+     * @param path The path that the texture was loaded from, exactly as it was passed to Engine.loadTextureAtlas().
+     * @return A texture that refers to the packed copy of the texture in the atlas.
+     */
+    public Texture getTexture(String path) {
+        Texture texture = textures.get(path);
+        if (texture == null) {
+            throw new Error("Texture is not in the atlas: " + path);
+        }
+        return texture;
+    }
+
+    /**
+     * @return The number of pages the textures were packed into.
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    // ======================================================================================
+    // Packing
+    // ======================================================================================
+
+    /**
+     * Packs a set of image files into an atlas, or loads the result of packing the same files previously.
+     * @param paths The paths used to identify each texture in the atlas.
+     * @param files The image file for each path.
+     * @param pageSize The width and height of each page (in pixels).
+     * @param padding The number of pixels between textures, filled by extending the edges of each texture.
+     * @param cacheDirectory The directory to cache packed atlases in.
+     */
+    static TextureAtlas pack(String[] paths, File[] files, int pageSize, int padding, File cacheDirectory) {
+        // The cache key covers everything that affects the result, including when each file was last changed:
+        StringBuilder key = new StringBuilder();
+        key.append(pageSize).append(' ').append(padding);
+        for (int i = 0; i < files.length; i++) {
+            key.append(' ').append(paths[i]).append(':').append(files[i].length()).append(':').append(files[i].lastModified());
+        }
+        String cacheName = String.format("atlas-%08x", key.toString().hashCode());
+
+        TextureAtlas atlas = loadCached(cacheDirectory, cacheName, key.toString());
+        if (atlas != null) {
+            return atlas;
+        }
+
+        // Load all of the images:
+        BufferedImage[] images = new BufferedImage[files.length];
+        for (int i = 0; i < files.length; i++) {
+            try {
+                images[i] = ImageIO.read(files[i]);
+            } catch (IOException e) {
+                images[i] = null;
+            }
+            if (images[i] == null) {
+                throw new Error("Failed to load texture: " + paths[i]);
+            }
+            if (images[i].getWidth() + padding * 2 > pageSize || images[i].getHeight() + padding * 2 > pageSize) {
+                throw new Error("Texture is too large for the atlas page size: " + paths[i]);
+            }
+        }
+
+        // Place the tallest images first, since that leaves the least wasted space with a skyline packer:
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> (images[a].getHeight() != images[b].getHeight())
+            ? images[b].getHeight() - images[a].getHeight()
+            : images[b].getWidth() - images[a].getWidth());
+
+        // Put each image on the first page that it fits on, starting a new page whenever none of them have room:
+        List<Skyline> skylines = new ArrayList<Skyline>();
+        int[] pages = new int[files.length];
+        int[] positions = new int[files.length * 2];
+        for (int i : order) {
+            int width = images[i].getWidth() + padding * 2;
+            int height = images[i].getHeight() + padding * 2;
+            int page = 0;
+            while (page < skylines.size() && !skylines.get(page).insert(width, height, positions, i * 2)) {
+                page++;
+            }
+            if (page == skylines.size()) {
+                skylines.add(new Skyline(pageSize));
+                skylines.get(page).insert(width, height, positions, i * 2);
+            }
+            pages[i] = page;
+        }
+
+        // Draw the images into their pages:
+        BufferedImage[] pageImages = new BufferedImage[skylines.size()];
+        for (int page = 0; page < pageImages.length; page++) {
+            pageImages[page] = new BufferedImage(pageSize, Math.max(1, skylines.get(page).usedHeight), BufferedImage.TYPE_INT_ARGB);
+        }
+        for (int i = 0; i < files.length; i++) {
+            drawPadded(pageImages[pages[i]], images[i], positions[i * 2], positions[i * 2 + 1], padding);
+        }
+        for (int page = 0; page < pageImages.length; page++) {
+            pageImages[page] = Engine.convertImage(pageImages[page]);
+        }
+
+        // Build the textures, and save everything for next time:
+        HashMap<String, Texture> textures = new HashMap<String, Texture>();
+        int[] bounds = new int[files.length * 4];
+        for (int i = 0; i < files.length; i++) {
+            bounds[i * 4] = positions[i * 2] + padding;
+            bounds[i * 4 + 1] = positions[i * 2 + 1] + padding;
+            bounds[i * 4 + 2] = images[i].getWidth();
+            bounds[i * 4 + 3] = images[i].getHeight();
+            textures.put(paths[i], new Texture(pageImages[pages[i]], bounds[i * 4], bounds[i * 4 + 1], bounds[i * 4 + 2], bounds[i * 4 + 3]));
+        }
+        saveCached(cacheDirectory, cacheName, key.toString(), paths, pages, bounds, pageImages);
+        return new TextureAtlas(textures, pageImages.length);
+    }
+
+    private static void drawPadded(BufferedImage page, BufferedImage image, int x, int y, int padding) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Graphics2D graphics = page.createGraphics();
+        graphics.setComposite(AlphaComposite.Src);
+        graphics.drawImage(image, x + padding, y + padding, null);
+        graphics.dispose();
+
+        // Extend the edge pixels out into the padding, so that filtering at the edges doesn't pick up neighbors:
+        for (int i = 0; i < padding; i++) {
+            for (int u = 0; u < width; u++) {
+                page.setRGB(x + padding + u, y + i, image.getRGB(u, 0));
+                page.setRGB(x + padding + u, y + padding + height + i, image.getRGB(u, height - 1));
+            }
+        }
+        for (int i = 0; i < padding; i++) {
+            for (int v = 0; v < height + padding * 2; v++) {
+                page.setRGB(x + i, y + v, page.getRGB(x + padding, y + v));
+                page.setRGB(x + padding + width + i, y + v, page.getRGB(x + padding + width - 1, y + v));
+            }
+        }
+    }
+
+    /**
+     * Packs rectangles into a page by keeping track of the top edge of the area filled so far (the "skyline") and
+     * placing each new rectangle wherever it will sit lowest.
+     */
+    private static final class Skyline {
+
+        private final int size;
+        private final List<int[]> segments = new ArrayList<int[]>();
+        int usedHeight;
+
+        Skyline(int size) {
+            this.size = size;
+            segments.add(new int[] { 0, 0, size });
+        }
+
+        /**
+         * @return Whether or not the rectangle fit, in which case its position is written into the output array.
+         */
+        boolean insert(int width, int height, int[] position, int offset) {
+            int bestIndex = -1, bestX = 0, bestY = Integer.MAX_VALUE;
+            for (int i = 0; i < segments.size(); i++) {
+                int x = segments.get(i)[0];
+                if (x + width > size) {
+                    break;
+                }
+
+                // The rectangle rests on the highest segment that it spans:
+                int y = 0;
+                for (int j = i, remaining = width; remaining > 0; j++) {
+                    int[] segment = segments.get(j);
+                    y = Math.max(y, segment[1]);
+                    remaining -= segment[2];
+                }
+                if (y + height <= size && y < bestY) {
+                    bestIndex = i;
+                    bestX = x;
+                    bestY = y;
+                }
+            }
+            if (bestIndex == -1) {
+                return false;
+            }
+
+            // Replace the segments covered by the rectangle with one new segment along its top:
+            segments.add(bestIndex, new int[] { bestX, bestY + height, width });
+            for (int i = bestIndex + 1; i < segments.size(); ) {
+                int[] segment = segments.get(i);
+                int overlap = bestX + width - segment[0];
+                if (overlap <= 0) {
+                    break;
+                }
+                if (overlap >= segment[2]) {
+                    segments.remove(i);
+                } else {
+                    segment[0] += overlap;
+                    segment[2] -= overlap;
+                    break;
+                }
+            }
+
+            position[offset] = bestX;
+            position[offset + 1] = bestY;
+            usedHeight = Math.max(usedHeight, bestY + height);
+            return true;
+        }
+
+    }
+
+    // ======================================================================================
+    // Caching
+    // ======================================================================================
+
+    private static TextureAtlas loadCached(File cacheDirectory, String cacheName, String key) {
+        File indexFile = new File(cacheDirectory, cacheName + ".txt");
+        if (!indexFile.exists()) {
+            return null;
+        }
+
+        try {
+            List<String> lines = Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8);
+            if (!lines.get(0).equals(key)) {
+                return null;
+            }
+
+            BufferedImage[] pageImages = new BufferedImage[Integer.parseInt(lines.get(1))];
+            for (int page = 0; page < pageImages.length; page++) {
+                pageImages[page] = ImageIO.read(new File(cacheDirectory, cacheName + "-" + page + ".png"));
+                if (pageImages[page] == null) {
+                    return null;
+                }
+                pageImages[page] = Engine.convertImage(pageImages[page]);
+            }
+
+            HashMap<String, Texture> textures = new HashMap<String, Texture>();
+            for (String line : lines.subList(2, lines.size())) {
+                String[] fields = line.split(" ", 6);
+                BufferedImage page = pageImages[Integer.parseInt(fields[0])];
+                textures.put(fields[5], new Texture(page, Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), Integer.parseInt(fields[4])));
+            }
+            return new TextureAtlas(textures, pageImages.length);
+        } catch (Exception e) {
+            // If anything is wrong with the cached copy, just pack the atlas again:
+            return null;
+        }
+    }
+
+    private static void saveCached(File cacheDirectory, String cacheName, String key, String[] paths, int[] pages, int[] bounds, BufferedImage[] pageImages) {
+        try {
+            cacheDirectory.mkdirs();
+            for (int page = 0; page < pageImages.length; page++) {
+                ImageIO.write(pageImages[page], "png", new File(cacheDirectory, cacheName + "-" + page + ".png"));
+            }
+
+            // Write the index last, so that a partially written cache is never mistaken for a complete one:
+            List<String> lines = new ArrayList<String>();
+            lines.add(key);
+            lines.add(Integer.toString(pageImages.length));
+            for (int i = 0; i < paths.length; i++) {
+                lines.add(pages[i] + " " + bounds[i * 4] + " " + bounds[i * 4 + 1] + " " + bounds[i * 4 + 2] + " " + bounds[i * 4 + 3] + " " + paths[i]);
+            }
+            Files.write(new File(cacheDirectory, cacheName + ".txt").toPath(), lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // The cache is only an optimization (and the assets directory may be read-only), so carry on without it.
+        }
+    }
+
+}
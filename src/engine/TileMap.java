@@ -0,0 +1,208 @@
+package engine;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A grid of tiles drawn from a tileset texture. The map is split into chunks of tiles that are drawn into cached
+ * images the first time they are needed, so drawing the map only costs one texture draw per visible chunk no matter
+ * how many tiles it has. A chunk is only drawn again after one of its tiles changes (or it was dropped from the cache).
+ */
+public class TileMap {
+
+    /**
+     * The tile index of an empty cell, which draws nothing.
+     */
+    public static final int EMPTY = -1;
+
+    // The width and height of each chunk (in tiles):
+    static final int CHUNK_TILES = 16;
+
+    public final int columns, rows;
+    public final int tileWidth, tileHeight;
+
+    private final Texture tileset;
+    private final int tilesetColumns, tileCount;
+    private final short[] tiles;
+    private final int chunkColumns, chunkRows;
+    private int maxCachedChunks = 64;
+    private int tilesetVersion;
+
+    // The pre-drawn chunks, indexed by chunk row * chunkColumns + chunk column, with the least recently drawn first:
+    private final LinkedHashMap<Integer, Texture> chunks = new LinkedHashMap<Integer, Texture>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Texture> eldest) {
+            return size() > maxCachedChunks;
+        }
+    };
+
+    /**
+     * Creates an empty tile map.
+     * @param tileset The texture containing the tiles, in rows from left to right and top to bottom.
+     * @param tileWidth The width of each tile (in pixels).
+     * @param tileHeight The height of each tile (in pixels).
+     * @param columns The width of the map (in tiles).
+     * @param rows The height of the map (in tiles).
+     */
+    public TileMap(Texture tileset, int tileWidth, int tileHeight, int columns, int rows) {
+        if (tileWidth <= 0 || tileHeight <= 0 || tileset.width < tileWidth || tileset.height < tileHeight) {
+            throw new Error("Invalid tile size for the tileset: " + tileWidth + "x" + tileHeight);
+        }
+        this.tileset = tileset;
+        this.tilesetVersion = tileset.version;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.columns = columns;
+        this.rows = rows;
+        this.tilesetColumns = tileset.width / tileWidth;
+        this.tileCount = Math.min(tilesetColumns * (tileset.height / tileHeight), Short.MAX_VALUE + 1);
+        this.tiles = new short[columns * rows];
+        this.chunkColumns = (columns + CHUNK_TILES - 1) / CHUNK_TILES;
+        this.chunkRows = (rows + CHUNK_TILES - 1) / CHUNK_TILES;
+        Arrays.fill(tiles, (short)EMPTY);
+    }
+
+    /**
+     * @param column The column of the cell.
+     * @param row The row of the cell.
+     * @return The index of the tile in the cell, or EMPTY if the cell is empty or outside of the map.
+     */
+    public int getTile(int column, int row) {
+        if (column < 0 || row < 0 || column >= columns || row >= rows) {
+            return EMPTY;
+        }
+        return tiles[row * columns + column];
+    }
+
+    /**
+     * Changes the tile in a cell.
+     * @param column The column of the cell.
+     * @param row The row of the cell.
+     * @param tile The index of the tile in the tileset (counting across each row of tiles), or EMPTY.
+     */
+    public void setTile(int column, int row, int tile) {
+        if (column < 0 || row < 0 || column >= columns || row >= rows) {
+            throw new Error("Cell is outside of the tile map: " + column + ", " + row);
+        }
+        if (tile < EMPTY || tile >= tileCount) {
+            throw new Error("Tile is not in the tileset: " + tile);
+        }
+        int index = row * columns + column;
+        if (tiles[index] != tile) {
+            tiles[index] = (short)tile;
+            chunks.remove((row / CHUNK_TILES) * chunkColumns + column / CHUNK_TILES);
+        }
+    }
+
+    /**
+     * Sets the maximum number of chunks that are kept drawn. Chunks that haven't been drawn recently are dropped
+     * first. Each chunk holds 16x16 tiles, and a chunk is needed for each part of the map that is visible at once.
+     * @param count The number of chunks. The default is 64.
+     */
+    public void setMaxCachedChunks(int count) {
+        maxCachedChunks = Math.max(1, count);
+        while (chunks.size() > maxCachedChunks) {
+            chunks.remove(chunks.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Draws the chunks that overlap a region of the screen.
+     * @param x The left edge of the map on the screen.
+     * @param y The top edge of the map on the screen.
+     * @param x1 The left edge of the visible region.
+     * @param y1 The top edge of the visible region.
+     * @param x2 The right edge of the visible region.
+     * @param y2 The bottom edge of the visible region.
+     */
+    void draw(int x, int y, int x1, int y1, int x2, int y2) {
+        int chunkWidth = CHUNK_TILES * tileWidth;
+        int chunkHeight = CHUNK_TILES * tileHeight;
+        int firstColumn = Math.max(0, Math.floorDiv(x1 - x, chunkWidth));
+        int firstRow = Math.max(0, Math.floorDiv(y1 - y, chunkHeight));
+        int lastColumn = Math.min(chunkColumns - 1, Math.floorDiv(x2 - 1 - x, chunkWidth));
+        int lastRow = Math.min(chunkRows - 1, Math.floorDiv(y2 - 1 - y, chunkHeight));
+
+        // Draw every chunk again if the tileset has changed (e.g. because it's a render target):
+        if (tileset.version != tilesetVersion) {
+            chunks.clear();
+            tilesetVersion = tileset.version;
+        }
+
+        // Make sure that every visible chunk fits in the cache at once, so that none are drawn twice per frame:
+        int visible = (lastColumn - firstColumn + 1) * (lastRow - firstRow + 1);
+        if (visible > maxCachedChunks) {
+            maxCachedChunks = visible;
+        }
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                Texture chunk = getChunk(column, row);
+                if (chunk != null) {
+                    int dx = x + column * chunkWidth;
+                    int dy = y + row * chunkHeight;
+                    Engine.drawChunk(chunk, dx, dy);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The chunk's texture, drawing it first if needed, or null if the chunk is completely empty.
+     */
+    private Texture getChunk(int column, int row) {
+        Integer key = row * chunkColumns + column;
+        Texture chunk = chunks.get(key);
+        if (chunk != null || chunks.containsKey(key)) {
+            return chunk;
+        }
+
+        int firstColumn = column * CHUNK_TILES;
+        int firstRow = row * CHUNK_TILES;
+        int width = Math.min(CHUNK_TILES, columns - firstColumn);
+        int height = Math.min(CHUNK_TILES, rows - firstRow);
+        BufferedImage image = null;
+        PixelBuffer pixels = null;
+        Graphics2D graphics = null;
+        boolean direct = tileset.getPixels() != null;
+        for (int v = 0; v < height; v++) {
+            for (int u = 0; u < width; u++) {
+                int tile = tiles[(firstRow + v) * columns + firstColumn + u];
+                if (tile == EMPTY) {
+                    continue;
+                }
+                if (image == null) {
+                    image = new BufferedImage(width * tileWidth, height * tileHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+                    if (direct) {
+                        pixels = new PixelBuffer(image);
+                    } else {
+                        graphics = image.createGraphics();
+                    }
+                }
+
+                // Copy the tile straight from the tileset's pixels when possible, the same way as Engine.drawSprite():
+                int sx = tileset.x + (tile % tilesetColumns) * tileWidth;
+                int sy = tileset.y + (tile / tilesetColumns) * tileHeight;
+                int dx = u * tileWidth;
+                int dy = v * tileHeight;
+                if (direct) {
+                    pixels.blit(tileset, sx, sy, tileWidth, tileHeight, dx, dy, false, false);
+                } else {
+                    graphics.drawImage(tileset.image, dx, dy, dx + tileWidth, dy + tileHeight, sx, sy, sx + tileWidth, sy + tileHeight, null);
+                }
+            }
+        }
+        if (graphics != null) {
+            graphics.dispose();
+        }
+
+        // Remember empty chunks too, so that we don't scan them again:
+        chunk = (image != null) ? new Texture(image) : null;
+        chunks.put(key, chunk);
+        return chunk;
+    }
+
+}
@@ -0,0 +1,176 @@
+package engine;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Records a frame's draw calls and then draws them by splitting the render target into tiles and drawing each tile
+ * on a separate thread. Each tile draws the commands that overlap it in the order they were submitted, so the result
+ * is the same as drawing everything on one thread.
+ */
+final class TiledRenderer {
+
+    /**
+     * A recorded draw call. It may be drawn several times (once per tile it overlaps) on different threads at once.
+     */
+    interface Command {
+        /**
+         * @param graphics The graphics to draw with, clipped to the current tile.
+         * @param pixels The pixels of the render target, clipped to the current tile.
+         * @param base The transform that the graphics is in, which it should be left in.
+         * @param scratch A transform that can be overwritten while drawing.
+         */
+        void draw(Graphics2D graphics, PixelBuffer pixels, AffineTransform base, AffineTransform scratch);
+    }
+
+    private static final int TILES_PER_THREAD = 4;
+
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    // The recorded commands, the transform that each one draws with, and their conservative bounds in render
+    // target pixels:
+    private int count;
+    private Command[] commands = new Command[1024];
+    private AffineTransform[] transforms = new AffineTransform[1024];
+    private int[] bounds = new int[1024 * 4];
+
+    // The tiles that the current render target is split into:
+    private BufferedImage tileImage;
+    private Tile[] tiles;
+
+    boolean active;
+
+    private static final class Tile {
+        final int x1, y1, x2, y2;
+        final Graphics2D graphics;
+        final PixelBuffer pixels;
+        final AffineTransform scratch = new AffineTransform();
+
+        Tile(BufferedImage image, PixelBuffer imagePixels, int x1, int y1, int x2, int y2) {
+            this.x1 = x1;
+            this.y1 = y1;
+            this.x2 = x2;
+            this.y2 = y2;
+            graphics = image.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setClip(x1, y1, x2 - x1, y2 - y1);
+            pixels = imagePixels.clipped(x1, y1, x2, y2);
+        }
+    }
+
+    /**
+     * Records a draw call.
+     * @param x1 The left edge of the area the command may draw into.
+     * @param y1 The top edge of the area the command may draw into.
+     * @param x2 The right edge of the area the command may draw into.
+     * @param y2 The bottom edge of the area the command may draw into.
+     * @param transform The transform to draw the command with. It must not be changed afterwards.
+     * @param command The command.
+     */
+    void add(float x1, float y1, float x2, float y2, AffineTransform transform, Command command) {
+        if (count == commands.length) {
+            commands = Arrays.copyOf(commands, count * 2);
+            transforms = Arrays.copyOf(transforms, count * 2);
+            bounds = Arrays.copyOf(bounds, count * 8);
+        }
+        commands[count] = command;
+        transforms[count] = transform;
+        bounds[count * 4] = (int)Math.floor(x1);
+        bounds[count * 4 + 1] = (int)Math.floor(y1);
+        bounds[count * 4 + 2] = (int)Math.ceil(x2);
+        bounds[count * 4 + 3] = (int)Math.ceil(y2);
+        count++;
+    }
+
+    /**
+     * Draws all of the recorded commands into an image and clears them.
+     * @param image The render target to draw into.
+     * @param pixels The pixels of the render target.
+     */
+    void render(BufferedImage image, PixelBuffer pixels) {
+        if (count == 0) {
+            return;
+        }
+
+        // Split the render target into a few tiles per thread:
+        if (tileImage != image) {
+            disposeTiles();
+            int tileCount = pool.getParallelism() * TILES_PER_THREAD;
+            int columns = (int)Math.ceil(Math.sqrt(tileCount));
+            int rows = (tileCount + columns - 1) / columns;
+            int tileWidth = (image.getWidth() + columns - 1) / columns;
+            int tileHeight = (image.getHeight() + rows - 1) / rows;
+            tiles = new Tile[columns * rows];
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    tiles[row * columns + column] = new Tile(image, pixels, column * tileWidth, row * tileHeight,
+                        Math.min(image.getWidth(), (column + 1) * tileWidth), Math.min(image.getHeight(), (row + 1) * tileHeight));
+                }
+            }
+            tileImage = image;
+        }
+
+        pool.invoke(new RenderTask(0, tiles.length));
+
+        // Let go of the commands so that whatever they refer to can be garbage collected:
+        Arrays.fill(commands, 0, count, null);
+        Arrays.fill(transforms, 0, count, null);
+        count = 0;
+    }
+
+    void disposeTiles() {
+        if (tiles != null) {
+            for (Tile tile : tiles) {
+                tile.graphics.dispose();
+            }
+        }
+        tiles = null;
+        tileImage = null;
+    }
+
+    private void renderTile(Tile tile) {
+        AffineTransform current = null;
+        for (int i = 0; i < count; i++) {
+            int b = i * 4;
+            if (bounds[b] < tile.x2 && bounds[b + 2] > tile.x1 && bounds[b + 1] < tile.y2 && bounds[b + 3] > tile.y1) {
+                if (transforms[i] != current) {
+                    current = transforms[i];
+                    tile.graphics.setTransform(current);
+                    Engine.countTransformChange();
+                }
+                commands[i].draw(tile.graphics, tile.pixels, current, tile.scratch);
+            }
+        }
+    }
+
+    /**
+     * Draws a range of tiles, splitting the range in half until each task has a single tile.
+     */
+    @SuppressWarnings("serial")
+    private final class RenderTask extends RecursiveAction {
+
+        private final int start, end;
+
+        RenderTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start == 1) {
+                renderTile(tiles[start]);
+            } else {
+                int middle = (start + end) / 2;
+                invokeAll(new RenderTask(start, middle), new RenderTask(middle, end));
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,229 @@
+package engine;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps textures that have been drawn with the same tint on more than one frame pre-tinted, so that they can be drawn
+ * exactly like untinted textures. Tints that only last for a single frame (e.g. a sprite that is fading out) are
+ * tinted into a temporary texture instead, which is never cached. The least recently drawn entries are dropped once
+ * the cache holds more than a set number of pixels. Dropped entries and old temporary textures are kept as spares and
+ * refilled for later tints of the same size, so that tints that change every frame don't allocate new images.
+ */
+final class TintCache {
+
+    private static final class Key {
+        Texture texture;
+        int version;
+        int color;
+
+        Key(Texture texture, int color) {
+            set(texture, color);
+        }
+
+        Key set(Texture texture, int color) {
+            this.texture = texture;
+            this.version = (texture != null) ? texture.version : 0;
+            this.color = color;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key)other;
+            return key.texture == texture && key.version == version && key.color == color;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(texture) * 31 + version) * 31 + color;
+        }
+    }
+
+    // The number of tints that are remembered while waiting to see whether they are drawn again on a later frame:
+    private static final int MAX_CANDIDATES = 256;
+
+    // The total number of pixels that spare textures may use:
+    private static final int MAX_SPARE_PIXELS = 1 << 20;
+
+    private int maxPixels = 1 << 20;
+    private int pixels;
+
+    // Looking entries up with a reused key avoids allocating on every draw:
+    private final Key lookup = new Key(null, 0);
+
+    // The pre-tinted textures, with the least recently drawn first:
+    private final LinkedHashMap<Key, Texture> entries = new LinkedHashMap<Key, Texture>(16, 0.75f, true);
+
+    // The most recent temporary texture, which is reused for the rest of the frame (e.g. when every sprite is fading
+    // out together):
+    private final Key temporaryKey = new Key(null, 0);
+    private Texture temporary;
+    private long temporaryFrame;
+
+    // The frame that each recently drawn tint that isn't cached yet was first drawn on:
+    private final LinkedHashMap<Key, Long> candidates = new LinkedHashMap<Key, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+            return size() > MAX_CANDIDATES;
+        }
+    };
+
+    // Tinted textures that are no longer used, with the oldest first, and the frame that each was last drawn on. They
+    // aren't refilled until a later frame, since tiled rendering may still draw them at the end of that frame:
+    private final ArrayList<Texture> spares = new ArrayList<Texture>();
+    private final ArrayList<Long> spareFrames = new ArrayList<Long>();
+    private int sparePixels;
+    private long frame;
+
+    /**
+     * @param maxPixels The total number of pixels that tinted textures may use. If zero, nothing is cached.
+     */
+    void setMaxPixels(int maxPixels) {
+        this.maxPixels = Math.max(0, maxPixels);
+        trim();
+    }
+
+    /**
+     * @param texture The texture to tint.
+     * @param color The tint, in non-premultiplied ARGB order.
+     * @param frame The number of the current frame.
+     * @return The texture multiplied by the tint, which is the same size as the texture.
+     */
+    Texture get(Texture texture, int color, long frame) {
+        this.frame = frame;
+        Texture tinted = entries.get(lookup.set(texture, color));
+        if (tinted != null) {
+            lookup.texture = null;
+            return tinted;
+        }
+
+        // Only cache tints that are drawn again on a later frame:
+        int size = texture.width * texture.height;
+        Long firstFrame = candidates.get(lookup);
+        boolean cache = firstFrame != null && firstFrame != frame && size <= maxPixels;
+        if (firstFrame == null) {
+            candidates.put(new Key(texture, color), frame);
+        } else if (cache) {
+            candidates.remove(lookup);
+        }
+        if (!cache && temporaryFrame == frame && temporaryKey.equals(lookup)) {
+            lookup.texture = null;
+            return temporary;
+        }
+        lookup.texture = null;
+
+        tinted = tint(texture, color, takeSpare(texture.width, texture.height));
+        if (cache) {
+            entries.put(new Key(texture, color), tinted);
+            pixels += size;
+            trim();
+        } else {
+            if (temporary != null) {
+                addSpare(temporary);
+            }
+            temporaryKey.set(texture, color);
+            temporary = tinted;
+            temporaryFrame = frame;
+        }
+        return tinted;
+    }
+
+    /**
+     * @param spare A spare texture of the same size to draw into, or null to create a new one.
+     * @return A copy of the texture with every channel of every pixel multiplied by a color.
+     */
+    private static Texture tint(Texture texture, int color, Texture spare) {
+        int width = texture.width;
+        int height = texture.height;
+        BufferedImage image = (spare != null) ? (BufferedImage)spare.image : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] dst = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+
+        // Copy the texture's pixels, going through Java2D only if they can't be read directly:
+        int[] src = texture.getPixels();
+        if (src != null) {
+            int opaqueMask = texture.isOpaque() ? 0xFF000000 : 0;
+            int imageWidth = texture.getImageWidth();
+            for (int y = 0; y < height; y++) {
+                for (int x = 0, s = (texture.y + y) * imageWidth + texture.x, d = y * width; x < width; x++, s++, d++) {
+                    dst[d] = src[s] | opaqueMask;
+                }
+            }
+        } else {
+            Graphics2D graphics = image.createGraphics();
+            graphics.setComposite(AlphaComposite.Src);
+            graphics.drawImage(texture.image, 0, 0, width, height, texture.x, texture.y, texture.x + width, texture.y + height, null);
+            graphics.dispose();
+        }
+
+        // Multiply the premultiplied channels by the tint's channels, and all of them by the tint's alpha:
+        int alpha = color >>> 24;
+        int red = PixelBuffer.mul8(alpha, (color >> 16) & 0xFF);
+        int green = PixelBuffer.mul8(alpha, (color >> 8) & 0xFF);
+        int blue = PixelBuffer.mul8(alpha, color & 0xFF);
+        for (int i = 0; i < dst.length; i++) {
+            int pixel = dst[i];
+            dst[i] = (PixelBuffer.mul8(alpha, pixel >>> 24) << 24)
+                | (PixelBuffer.mul8(red, (pixel >> 16) & 0xFF) << 16)
+                | (PixelBuffer.mul8(green, (pixel >> 8) & 0xFF) << 8)
+                | PixelBuffer.mul8(blue, pixel & 0xFF);
+        }
+        if (spare == null) {
+            return new Texture(image);
+        }
+
+        // Anything pre-drawn from the spare's old pixels has to be drawn again:
+        spare.version++;
+        return spare;
+    }
+
+    /**
+     * @return A spare texture of the given size that wasn't drawn on the current frame, or null if there isn't one.
+     */
+    private Texture takeSpare(int width, int height) {
+        for (int i = 0; i < spares.size(); i++) {
+            Texture spare = spares.get(i);
+            if (spare.width == width && spare.height == height && spareFrames.get(i) != frame) {
+                spares.remove(i);
+                spareFrames.remove(i);
+                sparePixels -= width * height;
+                return spare;
+            }
+        }
+        return null;
+    }
+
+    private void addSpare(Texture texture) {
+        int size = texture.width * texture.height;
+        if (size > MAX_SPARE_PIXELS) {
+            return;
+        }
+        spares.add(texture);
+        spareFrames.add(frame);
+        sparePixels += size;
+        while (sparePixels > MAX_SPARE_PIXELS) {
+            Texture oldest = spares.remove(0);
+            spareFrames.remove(0);
+            sparePixels -= oldest.width * oldest.height;
+        }
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<Key, Texture>> iterator = entries.entrySet().iterator();
+        while (pixels > maxPixels && iterator.hasNext()) {
+            Map.Entry<Key, Texture> entry = iterator.next();
+            pixels -= entry.getValue().width * entry.getValue().height;
+            addSpare(entry.getValue());
+            iterator.remove();
+        }
+    }
+
+}
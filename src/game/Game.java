@@ -24,6 +24,10 @@ public class Game {
     public Game() {
     }
 
+    public void fixedUpdate() {
+        // Called at the rate set by Engine.setFixedUpdateRate(), if any, before each update().
+    }
+
     public void update() {
         // Draw the background:
         Engine.drawTexture(texBackground, Vector2.zero);